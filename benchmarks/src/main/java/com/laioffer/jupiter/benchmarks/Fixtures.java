@@ -0,0 +1,93 @@
+package com.laioffer.jupiter.benchmarks;
+
+import com.laioffer.jupiter.entity.Game;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.entity.ItemType;
+import com.laioffer.jupiter.external.TwitchResponseParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Helix responses in src/main/resources/helix, and the entities built from them.
+// The payloads have the shape and the field sizes of real /games/top, /streams, /videos and /clips responses
+// with first=100 (first=20 for the games).
+public class Fixtures {
+    public static byte[] payload(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/helix/" + name + ".json")) {
+            if (in == null) {
+                throw new IOException("helix/" + name + ".json is not found in the classpath");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String payloadName(ItemType type) {
+        switch (type) {
+            case STREAM:
+                return "streams";
+            case VIDEO:
+                return "videos";
+            default:
+                return "clips";
+        }
+    }
+
+    public static List<Game> topGames() {
+        try {
+            return TwitchResponseParser.readGames(new ByteArrayInputStream(payload("games_top")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The recorded items of each type, completed like TwitchClient does (type and game id).
+    public static Map<ItemType, List<Item>> itemsByType(String gameId) {
+        Map<ItemType, List<Item>> result = new EnumMap<>(ItemType.class);
+        for (ItemType type : ItemType.values()) {
+            try {
+                List<Item> items = TwitchResponseParser.readItems(
+                        new ByteArrayInputStream(payload(payloadName(type))));
+                List<Item> completed = new ArrayList<>();
+                for (Item item : items) {
+                    completed.add(copy(item, item.getId(), gameId, type));
+                }
+                result.put(type, completed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    // A recommendation result like the one of RecommendationServlet, `perType` items of each type.
+    public static Map<String, List<Item>> itemMap(int perType) {
+        Map<String, List<Item>> itemMap = new HashMap<>();
+        for (Map.Entry<ItemType, List<Item>> entry : itemsByType("516575").entrySet()) {
+            itemMap.put(entry.getKey().toString(), new ArrayList<>(entry.getValue().subList(0, perType)));
+        }
+        return itemMap;
+    }
+
+    public static Item copy(Item item, String id, String gameId, ItemType type) {
+        return new Item.Builder().id(id).title(item.getTitle()).url(item.getUrl())
+                .thumbnailUrl(item.getThumbnailUrl()).broadcasterName(item.getBroadcasterName())
+                .gameId(gameId).type(type).viewerCount(item.getViewerCount()).viewCount(item.getViewCount())
+                .createdAt(item.getCreatedAt()).build();
+    }
+}
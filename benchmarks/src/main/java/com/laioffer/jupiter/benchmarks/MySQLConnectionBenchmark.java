@@ -0,0 +1,155 @@
+package com.laioffer.jupiter.benchmarks;
+
+import com.laioffer.jupiter.db.MySQLConnection;
+import com.laioffer.jupiter.db.MySQLConnectionPool;
+import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.entity.FavoriteProfile;
+import com.laioffer.jupiter.entity.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The queries of the favorite and recommendation requests, through the connection pool like the servlets,
+// against an in-memory H2 database in MySQL mode (see config.properties). The numbers show the cost of our
+// JDBC code and of the pool, not the network round trips to RDS.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MySQLConnectionBenchmark {
+    private static final int USERS = 200;
+    private static final int ITEMS = 2000;
+    private static final int FAVORITES_PER_USER = 30;
+    private static final String[] TYPES = {"STREAM", "VIDEO", "CLIP"};
+
+    private final List<String> itemIds = new ArrayList<>();
+    private int next;
+
+    @Setup
+    public void setUp() throws MySQLException, SQLException {
+        try (Connection conn = MySQLConnectionPool.getConnection()) {
+            createTables(conn);
+            insertData(conn);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MySQLConnectionPool.close();
+    }
+
+    @Benchmark
+    public FavoriteProfile getFavoriteProfile() throws MySQLException {
+        MySQLConnection connection = new MySQLConnection();
+        try {
+            return connection.getFavoriteProfile(nextUserId());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<Item>> getFavoriteItems() throws MySQLException {
+        MySQLConnection connection = new MySQLConnection();
+        try {
+            return connection.getFavoriteItems(nextUserId());
+        } finally {
+            connection.close();
+        }
+    }
+
+    // like the lookup of the similar items of a recommendation
+    @Benchmark
+    public List<Item> getItems() throws MySQLException {
+        int from = (next++ & Integer.MAX_VALUE) % (ITEMS - 20);
+        MySQLConnection connection = new MySQLConnection();
+        try {
+            return connection.getItems(itemIds.subList(from, from + 20));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private String nextUserId() {
+        return "user" + (next++ & Integer.MAX_VALUE) % USERS;
+    }
+
+    // the schema of MySQLMigrator, which needs GET_LOCK() and information_schema.statistics of MySQL
+    private static void createTables(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS items ("
+                    + "id VARCHAR(255) NOT NULL, title VARCHAR(255), url VARCHAR(255), thumbnail_url VARCHAR(255),"
+                    + "broadcaster_name VARCHAR(255), game_id VARCHAR(255), type VARCHAR(255) NOT NULL,"
+                    + "PRIMARY KEY (id))");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS users ("
+                    + "id VARCHAR(255) NOT NULL, password VARCHAR(255) NOT NULL, first_name VARCHAR(255),"
+                    + "last_name VARCHAR(255), PRIMARY KEY (id))");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS favorite_records ("
+                    + "user_id VARCHAR(255) NOT NULL, item_id VARCHAR(255) NOT NULL,"
+                    + "last_favor_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                    + "PRIMARY KEY (user_id, item_id),"
+                    + "FOREIGN KEY (user_id) REFERENCES users(id), FOREIGN KEY (item_id) REFERENCES items(id))");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_items_game_type ON items (game_id, type)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_favorite_records_item_user "
+                    + "ON favorite_records (item_id, user_id)");
+        }
+    }
+
+    private void insertData(Connection conn) throws SQLException {
+        Random random = new Random(42);
+        try (PreparedStatement insertItem = conn.prepareStatement(
+                "INSERT IGNORE INTO items VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < ITEMS; i++) {
+                String id = String.valueOf(1000000000L + i);
+                itemIds.add(id);
+                insertItem.setString(1, id);
+                insertItem.setString(2, "Road to Radiant, ranked grind all day " + i);
+                insertItem.setString(3, "https://www.twitch.tv/videos/" + id);
+                insertItem.setString(4, "https://static-cdn.jtvnw.net/cf_vods/" + id + "/thumb0-%{width}x%{height}.jpg");
+                insertItem.setString(5, "broadcaster" + random.nextInt(300));
+                insertItem.setString(6, String.valueOf(500000 + random.nextInt(40)));
+                insertItem.setString(7, TYPES[i % TYPES.length]);
+                insertItem.addBatch();
+            }
+            insertItem.executeBatch();
+        }
+        try (PreparedStatement insertUser = conn.prepareStatement("INSERT IGNORE INTO users VALUES (?, ?, ?, ?)");
+             PreparedStatement insertFavorite = conn.prepareStatement(
+                     "INSERT IGNORE INTO favorite_records (user_id, item_id) VALUES (?, ?)")) {
+            for (int u = 0; u < USERS; u++) {
+                insertUser.setString(1, "user" + u);
+                insertUser.setString(2, "3229c1097c00d497a0fd282d586be050");
+                insertUser.setString(3, "John");
+                insertUser.setString(4, "Smith");
+                insertUser.addBatch();
+                for (int f = 0; f < FAVORITES_PER_USER; f++) {
+                    insertFavorite.setString(1, "user" + u);
+                    insertFavorite.setString(2, itemIds.get(random.nextInt(ITEMS)));
+                    insertFavorite.addBatch();
+                }
+            }
+            insertUser.executeBatch();
+            insertFavorite.executeBatch();
+        }
+    }
+}
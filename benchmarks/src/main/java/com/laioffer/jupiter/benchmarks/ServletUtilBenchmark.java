@@ -0,0 +1,67 @@
+package com.laioffer.jupiter.benchmarks;
+
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.servlet.ServletUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Serialization of a recommendation result (20 items of each type) into the response,
+// plain and gzip, and from the payload cache used for the shared anonymous recommendation.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServletUtilBenchmark {
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private Map<String, List<Item>> itemMap;
+    private HttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        itemMap = Fixtures.itemMap(20);
+        request = ServletStubs.request(gzip
+                ? Collections.singletonMap("Accept-Encoding", "gzip, deflate, br")
+                : Collections.emptyMap());
+    }
+
+    @Benchmark
+    public long writeItem() throws IOException {
+        ServletStubs.CountingOutputStream body = new ServletStubs.CountingOutputStream();
+        ServletUtil.writeItem(ServletStubs.response(body), itemMap);
+        return body.getCount();
+    }
+
+    @Benchmark
+    public long writeItemMap() throws IOException {
+        ServletStubs.CountingOutputStream body = new ServletStubs.CountingOutputStream();
+        ServletUtil.writeItemMap(request, ServletStubs.response(body), itemMap);
+        return body.getCount();
+    }
+
+    @Benchmark
+    public long writeCachedItemMap() throws IOException {
+        ServletStubs.CountingOutputStream body = new ServletStubs.CountingOutputStream();
+        ServletUtil.writeCachedItemMap(request, ServletStubs.response(body), itemMap);
+        return body.getCount();
+    }
+}
@@ -0,0 +1,69 @@
+package com.laioffer.jupiter.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.laioffer.jupiter.entity.Game;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.external.TwitchResponseParser;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Decoding of the Helix responses into our entities, what TwitchClient does with every response body.
+// legacyDecode() is the decoding TwitchClient did before the streaming parser, kept as the baseline:
+// the whole body as a String, parsed by org.json, the "data" array written back to a String,
+// then parsed again by a new ObjectMapper.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TwitchDecodeBenchmark {
+    @Param({"games_top", "streams", "videos", "clips"})
+    public String endpoint;
+
+    private byte[] payload;
+    private boolean games;
+
+    @Setup
+    public void setUp() {
+        payload = Fixtures.payload(endpoint);
+        games = endpoint.startsWith("games");
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        if (games) {
+            return TwitchResponseParser.readGames(new ByteArrayInputStream(payload));
+        }
+        return TwitchResponseParser.readItemPage(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public Object legacyDecode() throws IOException {
+        String body = EntityUtils.toString(new ByteArrayEntity(payload, ContentType.APPLICATION_JSON));
+        String data = new JSONObject(body).getJSONArray("data").toString();
+        ObjectMapper mapper = new ObjectMapper();
+        if (games) {
+            return Arrays.asList(mapper.readValue(data, Game[].class));
+        }
+        return Arrays.asList(mapper.readValue(data, Item[].class));
+    }
+}
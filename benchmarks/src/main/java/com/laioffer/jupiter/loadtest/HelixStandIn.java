@@ -0,0 +1,243 @@
+package com.laioffer.jupiter.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.laioffer.jupiter.benchmarks.Fixtures;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// A local stand-in for the Twitch Helix API, so the webapp can be load tested without calling Twitch.
+// Start it, then start the webapp with -Dtwitch.api.baseUrl=http://localhost:8089/helix
+//     java -cp benchmarks/target/benchmarks.jar com.laioffer.jupiter.loadtest.HelixStandIn
+// It serves games/top, games (by name or id), streams, videos and clips from the recorded responses in
+// resources/helix, with the game_id of the request and distinct item ids for each game and page.
+// Settings (system properties):
+//   helix.port (8089)
+//   helix.latency.medianMs (40), helix.latency.p99Ms (250): log-normal response time
+//   helix.errorRate (0): share of the responses that are a 500 or a 503
+//   helix.throttleRate (0): share of the responses that are a 429, on top of the rate limit
+//   helix.rateLimit (800): points per minute, like Twitch, answered with Ratelimit-* headers and 429 when exceeded
+//   helix.pages (5): number of pages of a query, the last page has no cursor
+public class HelixStandIn {
+    private static final int PORT = Integer.getInteger("helix.port", 8089);
+    private static final double LATENCY_MEDIAN_MS = Double.parseDouble(System.getProperty("helix.latency.medianMs", "40"));
+    private static final double LATENCY_P99_MS = Double.parseDouble(System.getProperty("helix.latency.p99Ms", "250"));
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("helix.errorRate", "0"));
+    private static final double THROTTLE_RATE = Double.parseDouble(System.getProperty("helix.throttleRate", "0"));
+    private static final int RATE_LIMIT = Integer.getInteger("helix.rateLimit", 800);
+    private static final int PAGES = Integer.getInteger("helix.pages", 5);
+    // z-score of the 99th percentile of the normal distribution
+    private static final double Z_99 = 2.326;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<JsonNode> games = new ArrayList<>();
+    private final Map<String, List<JsonNode>> items = new HashMap<>();
+    // responses are sent after their latency by this scheduler, no thread sleeps
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+    private final double mu = Math.log(LATENCY_MEDIAN_MS);
+    private final double sigma = Math.max(0, Math.log(LATENCY_P99_MS / LATENCY_MEDIAN_MS) / Z_99);
+
+    // fixed one-minute window of the rate limit, guarded by this
+    private long windowStart = System.currentTimeMillis();
+    private int used;
+
+    public static void main(String[] args) throws IOException {
+        new HelixStandIn().start();
+        System.out.println("Helix stand-in listening on http://localhost:" + PORT + "/helix");
+    }
+
+    public HelixStandIn() throws IOException {
+        for (JsonNode game : MAPPER.readTree(Fixtures.payload("games_top")).get("data")) {
+            games.add(game);
+        }
+        for (String endpoint : new String[]{"streams", "videos", "clips"}) {
+            List<JsonNode> data = new ArrayList<>();
+            for (JsonNode item : MAPPER.readTree(Fixtures.payload(endpoint)).get("data")) {
+                data.add(item);
+            }
+            items.put(endpoint, data);
+        }
+    }
+
+    public void start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/helix/", this::handle);
+        server.start();
+    }
+
+    private void handle(HttpExchange exchange) {
+        long delayMs = Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+        int status;
+        byte[] body;
+        String remaining;
+        String reset;
+        boolean overLimit;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= 60000) {
+                windowStart = now;
+                used = 0;
+            }
+            used++;
+            overLimit = used > RATE_LIMIT;
+            remaining = String.valueOf(Math.max(0, RATE_LIMIT - used));
+            reset = String.valueOf((windowStart + 60000) / 1000);
+        }
+        double dice = ThreadLocalRandom.current().nextDouble();
+        if (overLimit || dice < THROTTLE_RATE) {
+            status = 429;
+            body = error(429, "Too Many Requests");
+        } else if (dice < THROTTLE_RATE + ERROR_RATE) {
+            status = ThreadLocalRandom.current().nextBoolean() ? 500 : 503;
+            body = error(status, "Internal Server Error");
+        } else {
+            try {
+                body = MAPPER.writeValueAsBytes(respond(exchange.getRequestURI().getPath(),
+                        parseQuery(exchange.getRequestURI().getRawQuery())));
+                status = 200;
+            } catch (IllegalArgumentException | IOException e) {
+                status = 400;
+                body = error(400, e.getMessage());
+            }
+        }
+        int finalStatus = status;
+        byte[] finalBody = body;
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Ratelimit-Limit", String.valueOf(RATE_LIMIT));
+        exchange.getResponseHeaders().set("Ratelimit-Remaining", remaining);
+        exchange.getResponseHeaders().set("Ratelimit-Reset", reset);
+        scheduler.schedule(() -> send(exchange, finalStatus, finalBody), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            // the client has gone
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode respond(String path, Map<String, List<String>> query) {
+        int first = Integer.parseInt(first(query, "first", "20"));
+        int page = Integer.parseInt(first(query, "after", "0"));
+        switch (path) {
+            case "/helix/games/top":
+                // we only have one page of top games
+                return page(games.subList(0, Math.min(first, games.size())), null);
+            case "/helix/games":
+                return findGames(query);
+            case "/helix/streams":
+            case "/helix/videos":
+            case "/helix/clips":
+                String gameId = first(query, "game_id", null);
+                if (gameId == null) {
+                    throw new IllegalArgumentException("Missing required parameter \"game_id\"");
+                }
+                return searchItems(path.substring("/helix/".length()), gameId, first, page);
+            default:
+                throw new IllegalArgumentException("Unknown endpoint " + path);
+        }
+    }
+
+    private ObjectNode findGames(Map<String, List<String>> query) {
+        List<JsonNode> found = new ArrayList<>();
+        for (String name : query.getOrDefault("name", Collections.emptyList())) {
+            for (JsonNode game : games) {
+                if (game.get("name").asText().toLowerCase(Locale.ROOT).equals(name.toLowerCase(Locale.ROOT))) {
+                    found.add(game);
+                }
+            }
+        }
+        for (String id : query.getOrDefault("id", Collections.emptyList())) {
+            for (JsonNode game : games) {
+                if (game.get("id").asText().equals(id)) {
+                    found.add(game);
+                }
+            }
+        }
+        return page(found, null);
+    }
+
+    // the recorded items with the requested game, and ids that differ for each game and page
+    private ObjectNode searchItems(String endpoint, String gameId, int first, int page) {
+        List<JsonNode> data = new ArrayList<>();
+        List<JsonNode> recorded = items.get(endpoint);
+        // the same game always gets the same items, like a real search between two changes
+        Random random = new Random(gameId.hashCode() * 31L + page);
+        for (int i = 0; i < Math.min(first, recorded.size()); i++) {
+            ObjectNode item = recorded.get(random.nextInt(recorded.size())).deepCopy();
+            item.put("id", gameId + "-" + page + "-" + i);
+            item.put("game_id", gameId);
+            data.add(item);
+        }
+        return page(data, page + 1 < PAGES ? String.valueOf(page + 1) : null);
+    }
+
+    private static ObjectNode page(List<JsonNode> data, String cursor) {
+        ObjectNode response = MAPPER.createObjectNode();
+        ArrayNode array = response.putArray("data");
+        array.addAll(data);
+        ObjectNode pagination = response.putObject("pagination");
+        if (cursor != null) {
+            pagination.put("cursor", cursor);
+        }
+        return response;
+    }
+
+    private static byte[] error(int status, String message) {
+        ObjectNode error = MAPPER.createObjectNode();
+        error.put("error", message);
+        error.put("status", status);
+        error.put("message", message);
+        try {
+            return MAPPER.writeValueAsBytes(error);
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, List<String>> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals <= 0) {
+                continue;
+            }
+            query.computeIfAbsent(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), k -> new ArrayList<>())
+                    .add(URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+        }
+        return query;
+    }
+
+    private static String first(Map<String, List<String>> query, String name, String defaultValue) {
+        List<String> values = query.get(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(0);
+    }
+}
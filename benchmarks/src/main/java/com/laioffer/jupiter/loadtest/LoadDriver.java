@@ -0,0 +1,326 @@
+package com.laioffer.jupiter.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.laioffer.jupiter.benchmarks.Fixtures;
+import com.laioffer.jupiter.entity.Game;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+// Load driver for a running jupiter webapp (normally pointed to the HelixStandIn).
+// Each virtual user is a thread that sends requests picked from the mix:
+// anonymous users only call /recommendation, /search and /game, logged-in users also add favorites,
+// so their recommendation is the personalized one. The logged-in users are registered and logged in first.
+//     java -cp benchmarks/target/benchmarks.jar -Dload.target=http://localhost:8080/jupiter \
+//          com.laioffer.jupiter.loadtest.LoadDriver
+// Settings (system properties):
+//   load.target (http://localhost:8080/jupiter), load.users (32), load.loggedInPercent (30)
+//   load.warmupSec (10), load.durationSec (60): only the requests after the warm-up are measured
+//   load.mix (recommendation=60,search=25,game=15), load.favoritePercent (5): share of the requests of
+//   a logged-in user that add a favorite item
+//   load.rate (100): requests per second of all the users together
+// The load is open-loop: each user sends on a fixed schedule (load.users / load.rate seconds apart) and the
+// latency of a request is measured from the time it was scheduled, not from when it was actually sent.
+// So when the server stalls, the requests that would have been sent meanwhile count the time they would have
+// waited, instead of being silently left out (coordinated omission), and the p99/p999 are the ones real users
+// would see. A user that falls behind sends the late requests right away until it catches up.
+// With load.rate=0 each user sends one request after the other (closed loop): that finds the maximum throughput,
+// but its tail latencies are only a lower bound.
+// At the end it prints, for each endpoint, the number of requests, the errors (not 2xx), the throughput and the
+// p50/p99/p999/max latency.
+public class LoadDriver {
+    private static final String TARGET = System.getProperty("load.target", "http://localhost:8080/jupiter");
+    private static final int USERS = Integer.getInteger("load.users", 32);
+    private static final int LOGGED_IN_PERCENT = Integer.getInteger("load.loggedInPercent", 30);
+    private static final int WARMUP_SEC = Integer.getInteger("load.warmupSec", 10);
+    private static final int DURATION_SEC = Integer.getInteger("load.durationSec", 60);
+    private static final String MIX = System.getProperty("load.mix", "recommendation=60,search=25,game=15");
+    private static final int FAVORITE_PERCENT = Integer.getInteger("load.favoritePercent", 5);
+    private static final double RATE = Double.parseDouble(System.getProperty("load.rate", "100"));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Integer> mix = parseMix(MIX);
+    private final int mixTotal = mix.values().stream().mapToInt(Integer::intValue).sum();
+    private final List<Game> games = Fixtures.topGames();
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+
+    // System.nanoTime() of the measured period, a request is measured if it is scheduled in it
+    private volatile long measureStart;
+    private volatile long measureEnd;
+
+    public static void main(String[] args) throws Exception {
+        new LoadDriver().run();
+    }
+
+    private LoadDriver() {
+        for (String endpoint : mix.keySet()) {
+            recorders.put(endpoint, new LatencyRecorder());
+        }
+        recorders.put("favorite", new LatencyRecorder());
+    }
+
+    private void run() throws Exception {
+        int loggedIn = USERS * LOGGED_IN_PERCENT / 100;
+        System.out.println("Load test of " + TARGET + ": " + USERS + " users (" + loggedIn + " logged in), "
+                + WARMUP_SEC + "s warm-up, " + DURATION_SEC + "s measured, mix " + mix + ", "
+                + (RATE > 0 ? "open loop at " + RATE + " req/s"
+                : "closed loop (the tail latencies are a lower bound)"));
+        List<VirtualUser> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            VirtualUser user = new VirtualUser();
+            if (i < loggedIn) {
+                user.login("loadtest-" + i);
+            }
+            users.add(user);
+        }
+
+        long now = System.nanoTime();
+        measureStart = now + WARMUP_SEC * 1000000000L;
+        measureEnd = measureStart + DURATION_SEC * 1000000000L;
+        CountDownLatch done = new CountDownLatch(USERS);
+        for (VirtualUser user : users) {
+            Thread thread = new Thread(() -> {
+                try {
+                    user.loop();
+                } finally {
+                    done.countDown();
+                }
+            }, "virtual-user");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        report();
+    }
+
+    private void report() {
+        System.out.printf("%-16s %10s %8s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<String, LatencyRecorder> entry : recorders.entrySet()) {
+            LatencyRecorder recorder = entry.getValue();
+            long[] latencies = recorder.sorted();
+            if (latencies.length == 0) {
+                continue;
+            }
+            System.out.printf("%-16s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    entry.getKey(), latencies.length, recorder.errors(),
+                    latencies.length / (double) DURATION_SEC,
+                    percentile(latencies, 0.50) / 1000.0, percentile(latencies, 0.99) / 1000.0,
+                    percentile(latencies, 0.999) / 1000.0, latencies[latencies.length - 1] / 1000.0);
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split("=");
+            result.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        return result;
+    }
+
+    // one user of the site, with its session cookie once logged in
+    private class VirtualUser {
+        private String cookie;
+        // an item of the last search, to add as favorite
+        private JsonNode lastItem;
+
+        void login(String userId) {
+            try {
+                ObjectNode user = MAPPER.createObjectNode();
+                user.put("user_id", userId);
+                user.put("password", "loadtest");
+                user.put("first_name", "Load");
+                user.put("last_name", "Test");
+                // 409 when the user is already registered by a previous run
+                send("POST", "/register", MAPPER.writeValueAsBytes(user));
+                Response response = send("POST", "/login", MAPPER.writeValueAsBytes(user));
+                if (response.status != 200) {
+                    System.out.println("Failed to log in " + userId + ", status " + response.status);
+                }
+            } catch (IOException e) {
+                System.out.println("Failed to log in " + userId + ": " + e.getMessage());
+            }
+        }
+
+        void loop() {
+            long intervalNanos = RATE > 0 ? (long) (USERS * 1e9 / RATE) : 0;
+            // spread the users over the first interval, so they do not all send at the same time
+            long scheduled = System.nanoTime()
+                    + (intervalNanos > 0 ? ThreadLocalRandom.current().nextLong(intervalNanos) : 0);
+            while (true) {
+                // the late requests scheduled before the end are still sent and measured
+                long start = intervalNanos > 0 ? scheduled : System.nanoTime();
+                if (start >= measureEnd) {
+                    return;
+                }
+                if (intervalNanos > 0) {
+                    long wait;
+                    while ((wait = scheduled - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    scheduled += intervalNanos;
+                }
+                String endpoint = pick();
+                boolean ok;
+                try {
+                    ok = call(endpoint);
+                } catch (IOException e) {
+                    ok = false;
+                }
+                long end = System.nanoTime();
+                if (start >= measureStart) {
+                    recorders.get(endpoint).record((end - start) / 1000, ok);
+                }
+            }
+        }
+
+        private String pick() {
+            if (cookie != null && lastItem != null && ThreadLocalRandom.current().nextInt(100) < FAVORITE_PERCENT) {
+                return "favorite";
+            }
+            int dice = ThreadLocalRandom.current().nextInt(mixTotal);
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                dice -= entry.getValue();
+                if (dice < 0) {
+                    return entry.getKey();
+                }
+            }
+            return "recommendation";
+        }
+
+        private boolean call(String endpoint) throws IOException {
+            Game game = games.get(ThreadLocalRandom.current().nextInt(games.size()));
+            Response response;
+            switch (endpoint) {
+                case "search":
+                    response = send("GET", "/search?game_id=" + URLEncoder.encode(game.getId(), "UTF-8"), null);
+                    rememberItem(response);
+                    break;
+                case "game":
+                    // half of the time the top games, otherwise one game by name
+                    response = send("GET", ThreadLocalRandom.current().nextBoolean() ? "/game"
+                            : "/game?game_name=" + URLEncoder.encode(game.getName(), "UTF-8"), null);
+                    break;
+                case "favorite":
+                    ObjectNode body = MAPPER.createObjectNode();
+                    body.set("favorite", lastItem);
+                    response = send("POST", "/favorite", MAPPER.writeValueAsBytes(body));
+                    lastItem = null;
+                    break;
+                default:
+                    response = send("GET", "/recommendation", null);
+                    break;
+            }
+            return response.status / 100 == 2;
+        }
+
+        private void rememberItem(Response response) throws IOException {
+            if (cookie == null || response.status != 200) {
+                return;
+            }
+            for (JsonNode items : MAPPER.readTree(response.body)) {
+                if (items.size() > 0) {
+                    lastItem = items.get(ThreadLocalRandom.current().nextInt(items.size()));
+                    return;
+                }
+            }
+        }
+
+        private Response send(String method, String path, byte[] body) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(TARGET + path).openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(30000);
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            if (cookie != null) {
+                connection.setRequestProperty("Cookie", cookie);
+            }
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            String setCookie = connection.getHeaderField("Set-Cookie");
+            if (setCookie != null && setCookie.startsWith("JSESSIONID=")) {
+                cookie = setCookie.split(";")[0];
+            }
+            // read the whole body, so the connection can be reused (keep-alive)
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (in != null) {
+                try {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, n);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            return new Response(status, bytes.toByteArray());
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final byte[] body;
+
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    // All the latencies (micros) of one endpoint, sorted only once at the end.
+    private static class LatencyRecorder {
+        private long[] latencies = new long[1024];
+        private int size;
+        private int errors;
+
+        synchronized void record(long micros, boolean ok) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = micros;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        synchronized long[] sorted() {
+            long[] result = Arrays.copyOf(latencies, size);
+            Arrays.sort(result);
+            return result;
+        }
+
+        synchronized int errors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.benchmarks.Fixtures;
+import com.laioffer.jupiter.entity.FavoriteProfile;
+import com.laioffer.jupiter.entity.Game;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.entity.ItemType;
+import com.laioffer.jupiter.external.TwitchClient;
+import com.laioffer.jupiter.external.TwitchRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// The recommendation without the network: the client answers every search from the recorded responses,
+// so this measures the fan-out bookkeeping, the candidate collection and the ranking.
+// In the same package as ItemRecommender to use its package-private constructor and selectTopItems().
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecommendationBenchmark {
+    private ItemRecommender recommender;
+    private List<Candidate> candidates;
+    private RecommendationContext context;
+
+    @Setup
+    public void setUp() {
+        recommender = new ItemRecommender(new RecordedTwitchClient());
+
+        // 5 favorite games with 20 videos each, like one type of a logged-in user's recommendation
+        List<Game> games = Fixtures.topGames().subList(0, 5);
+        Map<String, Integer> gameCounts = new HashMap<>();
+        Map<String, Long> lastFavorTimes = new HashMap<>();
+        candidates = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int rank = 0; rank < games.size(); rank++) {
+            String gameId = games.get(rank).getId();
+            gameCounts.put(gameId, 5 - rank);
+            lastFavorTimes.put(gameId, now - rank * 7L * 24 * 3600 * 1000);
+            List<Item> items = Fixtures.itemsByType(gameId).get(ItemType.VIDEO);
+            for (int i = 0; i < 20; i++) {
+                Item item = items.get(i);
+                candidates.add(new Candidate(Fixtures.copy(item, gameId + "-" + item.getId(), gameId, ItemType.VIDEO),
+                        rank, i));
+            }
+        }
+        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        Map<String, Map<String, Long>> times = new HashMap<>();
+        counts.put(ItemType.VIDEO.toString(), gameCounts);
+        times.put(ItemType.VIDEO.toString(), lastFavorTimes);
+        context = new RecommendationContext(new FavoriteProfile(new HashSet<>(), counts, times), now);
+    }
+
+    // the whole anonymous recommendation: top games, 3 types x 5 games searches, ranking
+    @Benchmark
+    public Map<String, List<Item>> computeItemsByDefault() throws RecommendationException {
+        return recommender.computeItemsByDefault();
+    }
+
+    // only the ranking of 100 candidates of one type
+    @Benchmark
+    public List<Item> selectTopItems(Scorer scorer) {
+        return ItemRecommender.selectTopItems(candidates, context, scorer.itemScorer);
+    }
+
+    // the anonymous recommendation always uses the default scorer, so only selectTopItems() compares them
+    @State(Scope.Benchmark)
+    public static class Scorer {
+        @Param({"default", "legacy"})
+        public String name;
+
+        private ItemScorer itemScorer;
+
+        @Setup
+        public void setUp() {
+            itemScorer = "legacy".equals(name) ? new LegacyOrderScorer() : new DefaultItemScorer();
+        }
+    }
+
+    // Answers from the recorded responses, already completed like a cache hit.
+    private static class RecordedTwitchClient extends TwitchClient {
+        private final List<Game> topGames = Fixtures.topGames();
+        private final Map<String, Map<ItemType, List<Item>>> itemsByGame = new HashMap<>();
+
+        RecordedTwitchClient() {
+            super(TwitchRateLimiter.Priority.USER);
+            for (Game game : topGames) {
+                // the recorded items are the same for every game, give them distinct ids like Twitch would
+                Map<ItemType, List<Item>> itemsByType = Fixtures.itemsByType(game.getId());
+                for (List<Item> items : itemsByType.values()) {
+                    items.replaceAll(item -> Fixtures.copy(item, game.getId() + "-" + item.getId(), game.getId(),
+                            item.getType()));
+                }
+                itemsByGame.put(game.getId(), itemsByType);
+            }
+        }
+
+        @Override
+        public CompletableFuture<List<Game>> topGamesAsync(int limit) {
+            return CompletableFuture.completedFuture(topGames.subList(0, Math.min(limit, topGames.size())));
+        }
+
+        @Override
+        public CompletableFuture<List<Item>> searchByTypeOrStaleAsync(String gameId, ItemType type, int limit) {
+            List<Item> items = itemsByGame.get(gameId).get(type);
+            return CompletableFuture.completedFuture(items.subList(0, Math.min(limit, items.size())));
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.entity.Item;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Optional write-behind mode for favorite add/remove.
+// Instead of two autocommit statements per click, the mutations are queued in memory, only the latest mutation
+// of each (user, item) is kept, and they are written in JDBC batches in one transaction when the queue reaches
+// db.favorite.batchSize or every db.favorite.flushIntervalMs. An add followed by a remove of the same item is
+// collapsed into a single DELETE, so the item and favorite INSERTs are never sent.
+// The reads of the favorites (FavoriteServlet, FavoriteProfileCache) overlay the queued mutations of the user,
+// so a user always sees their own changes even before they are written.
+// It is enabled by db.favorite.writeBehind=true in config.properties.
+public class FavoriteWriteBehind {
+    private static final FavoriteWriteBehind INSTANCE = new FavoriteWriteBehind();
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+
+    // userId -> (itemId -> latest mutation), guarded by "this"
+    private Map<String, Map<String, Mutation>> pending = new HashMap<>();
+    // the mutations being written by the current flush, still visible to the reads until they are committed
+    private Map<String, Map<String, Mutation>> inFlight = new HashMap<>();
+    private int pendingCount;
+    private ScheduledExecutorService scheduler;
+
+    private FavoriteWriteBehind() {
+        boolean enabled = false;
+        int batchSize = 100;
+        long flushIntervalMs = 500;
+        try {
+            enabled = Boolean.parseBoolean(MySQLDBUtil.getProperty("db.favorite.writeBehind", "false"));
+            batchSize = MySQLDBUtil.getIntProperty("db.favorite.batchSize", batchSize);
+            flushIntervalMs = MySQLDBUtil.getIntProperty("db.favorite.flushIntervalMs", (int) flushIntervalMs);
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Failed to read write-behind settings, favorites are written directly");
+        }
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public static FavoriteWriteBehind getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void start() {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "favorite-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Stop the background flush and write everything still in the queue, it is called when the webapp is shut down.
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // a failed flush puts the mutations back, so retry a few times before giving up
+        for (int i = 0; i < 3 && hasPending(); i++) {
+            flushQuietly();
+        }
+        if (hasPending()) {
+            System.err.println("Failed to write " + pendingCount + " favorite changes before shutdown");
+        }
+    }
+
+    // The item must have an id and a type: the type is needed to save an added item, and to update the favorite
+    // profile of the user when the queued mutation is applied to it.
+    public void add(String userId, Item item) {
+        enqueue(new Mutation(userId, validate(item), true));
+    }
+
+    public void remove(String userId, Item item) {
+        enqueue(new Mutation(userId, validate(item), false));
+    }
+
+    private static Item validate(Item item) {
+        if (item == null || item.getId() == null || item.getType() == null) {
+            throw new IllegalArgumentException("A favorite item needs an id and a type");
+        }
+        return item;
+    }
+
+    // The queued mutations of the user, oldest first: the ones being written, then the ones waiting for the next
+    // flush. Applying a mutation which has already been written is a no-op, so a reader can take them before
+    // reading the database and apply them after, even if a flush commits in between.
+    public synchronized List<Mutation> getPending(String userId) {
+        List<Mutation> result = new ArrayList<>();
+        if (inFlight.containsKey(userId)) {
+            result.addAll(inFlight.get(userId).values());
+        }
+        if (pending.containsKey(userId)) {
+            result.addAll(pending.get(userId).values());
+        }
+        return result;
+    }
+
+    // Apply the queued mutations of the user to the favorite items read from the database.
+    public void applyPending(String userId, Map<String, List<Item>> itemMap) {
+        for (Mutation mutation : getPending(userId)) {
+            for (List<Item> items : itemMap.values()) {
+                items.removeIf(item -> item.getId().equals(mutation.getItemId()));
+            }
+            if (mutation.isAdd()) {
+                itemMap.computeIfAbsent(mutation.getItem().getType().toString(), k -> new ArrayList<>())
+                        .add(mutation.getItem());
+            }
+        }
+    }
+
+    private void enqueue(Mutation mutation) {
+        ScheduledExecutorService executor = null;
+        synchronized (this) {
+            Map<String, Mutation> mutations = pending.computeIfAbsent(mutation.getUserId(), k -> new LinkedHashMap<>());
+            if (mutations.put(mutation.getItemId(), mutation) == null) {
+                pendingCount++;
+            }
+            if (pendingCount >= batchSize) {
+                executor = scheduler;
+            }
+        }
+        if (executor != null) {
+            try {
+                // flush now instead of waiting for the next interval
+                executor.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // shutting down, stop() writes the rest
+            }
+        }
+    }
+
+    private synchronized boolean hasPending() {
+        return pendingCount > 0;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Write all the queued mutations in one transaction.
+    private void flush() throws MySQLException {
+        List<Mutation> batch = new ArrayList<>();
+        synchronized (this) {
+            if (pendingCount == 0) {
+                return;
+            }
+            inFlight = pending;
+            pending = new HashMap<>();
+            pendingCount = 0;
+            for (Map<String, Mutation> mutations : inFlight.values()) {
+                batch.addAll(mutations.values());
+            }
+        }
+
+        MySQLConnection connection = null;
+        boolean written = false;
+        try {
+            connection = new MySQLConnection();
+            connection.applyFavoriteMutations(batch);
+            written = true;
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            synchronized (this) {
+                if (!written) {
+                    // put the failed mutations back, unless the user has changed the same item again meanwhile
+                    requeue();
+                }
+                inFlight = new HashMap<>();
+            }
+        }
+    }
+
+    // called with the lock held
+    private void requeue() {
+        for (Map.Entry<String, Map<String, Mutation>> entry : inFlight.entrySet()) {
+            Map<String, Mutation> mutations = pending.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>());
+            for (Mutation mutation : entry.getValue().values()) {
+                if (mutations.putIfAbsent(mutation.getItemId(), mutation) == null) {
+                    pendingCount++;
+                }
+            }
+        }
+    }
+
+    // The latest change of a favorite record. It carries the item: an added item has to be saved to items first,
+    // and the type and game of the item are needed to update the favorite profile.
+    public static class Mutation {
+        private final String userId;
+        private final Item item;
+        private final boolean add;
+
+        Mutation(String userId, Item item, boolean add) {
+            this.userId = userId;
+            this.item = item;
+            this.add = add;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getItemId() {
+            return item.getId();
+        }
+
+        public Item getItem() {
+            return item;
+        }
+
+        public boolean isAdd() {
+            return add;
+        }
+    }
+}
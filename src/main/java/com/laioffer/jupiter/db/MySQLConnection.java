@@ -1,26 +1,64 @@
 package com.laioffer.jupiter.db;
 
+import com.laioffer.jupiter.entity.FavoriteProfile;
 import com.laioffer.jupiter.entity.Item;
 import com.laioffer.jupiter.entity.ItemType;
 import com.laioffer.jupiter.entity.User;
+import com.laioffer.jupiter.metrics.SqlQueryEvent;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
 
 public class MySQLConnection {
+    // max number of ids sent in one "IN (...)" query, can be set by db.query.inChunkSize in config.properties
+    private static final int IN_CHUNK_SIZE = readChunkSize();
+    // the smallest IN list we send, shorter lists are padded so there are only a few distinct SQL strings
+    private static final int MIN_IN_SIZE = 8;
+
+    // All the SQL strings are constants, so the driver can cache one server-side prepared statement for each of them
+    // on every pooled connection, see MySQLConnectionPool.
+    private static final String INSERT_FAVORITE_SQL =
+            "INSERT IGNORE INTO favorite_records (user_id, item_id) VALUES (?, ?)";
+    private static final String DELETE_FAVORITE_SQL =
+            "DELETE FROM favorite_records WHERE user_id = ? AND item_id = ?";
+    private static final String INSERT_ITEM_SQL = "INSERT IGNORE INTO items VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_FAVORITE_ITEMS_SQL =
+            "SELECT items.* FROM favorite_records JOIN items ON favorite_records.item_id = items.id "
+                    + "WHERE favorite_records.user_id = ?";
+    private static final String SELECT_FAVORITE_ITEM_IDS_SQL = "SELECT item_id FROM favorite_records WHERE user_id = ?";
+    private static final String SELECT_GAME_IDS_SQL = "SELECT game_id, type FROM items WHERE id IN (%s)";
+    private static final String SELECT_FAVORITE_PROFILE_SQL =
+            "SELECT items.id, items.type, items.game_id, favorite_records.last_favor_time FROM favorite_records "
+                    + "JOIN items ON favorite_records.item_id = items.id WHERE favorite_records.user_id = ?";
+    private static final String SELECT_ALL_FAVORITES_SQL =
+            "SELECT favorite_records.user_id, items.id, items.game_id FROM favorite_records "
+                    + "JOIN items ON favorite_records.item_id = items.id ORDER BY favorite_records.user_id";
+    private static final String SELECT_ITEMS_SQL = "SELECT * FROM items WHERE id IN (%s)";
+    private static final String VERIFY_LOGIN_SQL = "SELECT first_name, last_name FROM users WHERE id = ? AND password = ?";
+    private static final String INSERT_USER_SQL = "INSERT IGNORE INTO users VALUES (?, ?, ?, ?)";
+
+    // latency and errors of each query, see QueryMetrics
+    private static final QueryMetrics INSERT_FAVORITE = new QueryMetrics("insert_favorite");
+    private static final QueryMetrics DELETE_FAVORITE = new QueryMetrics("delete_favorite");
+    private static final QueryMetrics INSERT_ITEM = new QueryMetrics("insert_item");
+    private static final QueryMetrics APPLY_FAVORITE_MUTATIONS = new QueryMetrics("apply_favorite_mutations");
+    private static final QueryMetrics SELECT_FAVORITE_ITEMS = new QueryMetrics("select_favorite_items");
+    private static final QueryMetrics SELECT_FAVORITE_ITEM_IDS = new QueryMetrics("select_favorite_item_ids");
+    private static final QueryMetrics SELECT_GAME_IDS = new QueryMetrics("select_game_ids");
+    private static final QueryMetrics SELECT_FAVORITE_PROFILE = new QueryMetrics("select_favorite_profile");
+    private static final QueryMetrics SELECT_ALL_FAVORITES = new QueryMetrics("select_all_favorites");
+    private static final QueryMetrics SELECT_ITEMS = new QueryMetrics("select_items");
+    private static final QueryMetrics VERIFY_LOGIN = new QueryMetrics("verify_login");
+    private static final QueryMetrics INSERT_USER = new QueryMetrics("insert_user");
+
     private final Connection conn;
 
-    // Create a connection to the MySQL database.
+    // Borrow a connection to the MySQL database from the connection pool.
     public MySQLConnection() throws MySQLException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver").newInstance();
-            conn = DriverManager.getConnection(MySQLDBUtil.getMySQLAddress());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new MySQLException("Failed to connect to Database");
-        }
+        conn = MySQLConnectionPool.getConnection();
     }
-    // helps close the connection
+    // helps return the connection to the pool
     public void close() {
         if (conn != null) {
             try {
@@ -38,20 +76,24 @@ public class MySQLConnection {
             throw new MySQLException("Failed to connect to Database");
         }
         // Need to make sure item is added to the database first because the foreign key
-        // restriction on item_id(favorite_records) -> id(items)　
+        // restriction on item_id(favorite_records) -> id(items)
         saveItem(item);
+        SqlQueryEvent event = INSERT_FAVORITE.start();
+        int rows = 0;
         // Using ? and preparedStatement to prevent SQL injection --> only for SQL, to prevent SQL injection
         // IGNORE keyword from SQL helps to avoid duplicate operations
-        String sql = "INSERT IGNORE INTO favorite_records (user_id, item_id) VALUES (?, ?)";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        // try-with-resources closes the statement when we are done, which returns it to the statement cache
+        try (PreparedStatement statement = prepare(INSERT_FAVORITE_SQL)) {
             // the library requires starting index from 1, not 0
             statement.setString(1, userId);
             statement.setString(2, item.getId());
-            statement.executeUpdate();
+            rows = statement.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
+            INSERT_FAVORITE.error(event);
             throw new MySQLException("Failed to save favorite item to Database");
+        } finally {
+            INSERT_FAVORITE.record(event, rows);
         }
     }
 
@@ -61,16 +103,19 @@ public class MySQLConnection {
             System.err.println("DB connection failed");
             throw new MySQLException("Failed to connect to Database");
         }
-        String sql = "DELETE FROM favorite_records WHERE user_id = ? AND item_id = ?";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        SqlQueryEvent event = DELETE_FAVORITE.start();
+        int rows = 0;
+        try (PreparedStatement statement = prepare(DELETE_FAVORITE_SQL)) {
             // the library requires starting index from 1, not 0
             statement.setString(1, userId);
             statement.setString(2, itemId);
-            statement.executeUpdate();
+            rows = statement.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
+            DELETE_FAVORITE.error(event);
             throw new MySQLException("Failed to delete favorite item to Database");
+        } finally {
+            DELETE_FAVORITE.record(event, rows);
         }
     }
 
@@ -82,9 +127,9 @@ public class MySQLConnection {
             System.err.println("DB connection failed");
             throw new MySQLException("Failed to connect to Database");
         }
-        String sql = "INSERT IGNORE INTO items VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        SqlQueryEvent event = INSERT_ITEM.start();
+        int rows = 0;
+        try (PreparedStatement statement = prepare(INSERT_ITEM_SQL)) {
             // the library requires starting index from 1, not 0
             statement.setString(1, item.getId());
             statement.setString(2, item.getTitle());
@@ -93,10 +138,70 @@ public class MySQLConnection {
             statement.setString(5, item.getBroadcasterName());
             statement.setString(6, item.getGameId());
             statement.setString(7, item.getType().toString());
-            statement.executeUpdate();
+            rows = statement.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
+            INSERT_ITEM.error(event);
             throw new MySQLException("Failed to add item to Database");
+        } finally {
+            INSERT_ITEM.record(event, rows);
+        }
+    }
+
+    // Write the queued favorite changes of FavoriteWriteBehind in one transaction:
+    // the items of the added favorites, then the added favorite records, then the removed ones,
+    // each as one JDBC batch.
+    public void applyFavoriteMutations(List<FavoriteWriteBehind.Mutation> mutations) throws MySQLException {
+        if (conn == null) {
+            System.err.println("DB connection failed");
+            throw new MySQLException("Failed to connect to Database");
+        }
+        SqlQueryEvent event = APPLY_FAVORITE_MUTATIONS.start();
+        int rows = 0;
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement saveItem = prepare(INSERT_ITEM_SQL);
+                 PreparedStatement insertFavorite = prepare(INSERT_FAVORITE_SQL);
+                 PreparedStatement deleteFavorite = prepare(DELETE_FAVORITE_SQL)) {
+                for (FavoriteWriteBehind.Mutation mutation : mutations) {
+                    if (mutation.isAdd()) {
+                        Item item = mutation.getItem();
+                        saveItem.setString(1, item.getId());
+                        saveItem.setString(2, item.getTitle());
+                        saveItem.setString(3, item.getUrl());
+                        saveItem.setString(4, item.getThumbnailUrl());
+                        saveItem.setString(5, item.getBroadcasterName());
+                        saveItem.setString(6, item.getGameId());
+                        saveItem.setString(7, item.getType().toString());
+                        saveItem.addBatch();
+                        insertFavorite.setString(1, mutation.getUserId());
+                        insertFavorite.setString(2, item.getId());
+                        insertFavorite.addBatch();
+                    } else {
+                        deleteFavorite.setString(1, mutation.getUserId());
+                        deleteFavorite.setString(2, mutation.getItemId());
+                        deleteFavorite.addBatch();
+                    }
+                }
+                // items first because of the foreign key restriction on item_id(favorite_records) -> id(items)
+                saveItem.executeBatch();
+                insertFavorite.executeBatch();
+                deleteFavorite.executeBatch();
+                conn.commit();
+                rows = mutations.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                // the connection goes back to the pool, restore the default mode
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            APPLY_FAVORITE_MUTATIONS.error(event);
+            throw new MySQLException("Failed to save favorite changes to Database");
+        } finally {
+            APPLY_FAVORITE_MUTATIONS.record(event, rows);
         }
     }
 
@@ -111,29 +216,23 @@ public class MySQLConnection {
         for (ItemType type : ItemType.values()) {
             itemMap.put(type.toString(), new ArrayList<>());
         }
-        // firstly get the set of favoriteItemIds
-        Set<String> favoriteItemIds = getFavoriteItemIds(userId);
-        // secondly access to items table to get the info of each item
-        // TODO: how to refine the sql command to get the info for all favorite items by accessing to DB once?
-        String sql = "SELECT * FROM items WHERE id = ?";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
-            for (String itemId : favoriteItemIds) {
-                statement.setString(1, itemId);
-                ResultSet rs = statement.executeQuery();
-                if (rs.next()) {
-                    ItemType itemType = ItemType.valueOf(rs.getString("type"));
-                    Item item = new Item.Builder().id(rs.getString("id"))
-                            .title(rs.getString("title")).url(rs.getString("url"))
-                            .thumbnailUrl(rs.getString("thumbnail_url"))
-                            .broadcasterName(rs.getString("broadcaster_name"))
-                            .gameId(rs.getString("game_id")).type(itemType).build();
-                    itemMap.get(rs.getString("type")).add(item);
+        SqlQueryEvent event = SELECT_FAVORITE_ITEMS.start();
+        int rows = 0;
+        // join favorite_records with items, so all the favorite items are read by accessing to DB once
+        try (PreparedStatement statement = prepare(SELECT_FAVORITE_ITEMS_SQL)) {
+            statement.setString(1, userId);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    itemMap.get(rs.getString("type")).add(readItem(rs));
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            SELECT_FAVORITE_ITEMS.error(event);
             throw new MySQLException("Failed to get favorite items from Database");
+        } finally {
+            SELECT_FAVORITE_ITEMS.record(event, rows);
         }
         return itemMap;
     }
@@ -148,18 +247,23 @@ public class MySQLConnection {
         }
 
         Set<String> favoriteItemIds = new HashSet<>();
-        String sql = "SELECT item_id FROM favorite_records WHERE user_id = ?";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        SqlQueryEvent event = SELECT_FAVORITE_ITEM_IDS.start();
+        int rows = 0;
+        try (PreparedStatement statement = prepare(SELECT_FAVORITE_ITEM_IDS_SQL)) {
             statement.setString(1, userId);
-            ResultSet rs = statement.executeQuery();
-            while (rs.next()) {
-                String itemId = rs.getString("item_id");
-                favoriteItemIds.add(itemId);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    String itemId = rs.getString("item_id");
+                    favoriteItemIds.add(itemId);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            SELECT_FAVORITE_ITEM_IDS.error(event);
             throw new MySQLException("Failed to get favorite item ids from Database");
+        } finally {
+            SELECT_FAVORITE_ITEM_IDS.record(event, rows);
         }
 
         return favoriteItemIds;
@@ -177,24 +281,146 @@ public class MySQLConnection {
         for (ItemType type : ItemType.values()) {
             itemMap.put(type.toString(), new ArrayList<>());
         }
-        // access to items table from db to get the info of each item based on item id
-        String sql = "SELECT game_id, type FROM items WHERE id = ?";
+        // access to items table from db to get the info of the items based on item ids,
+        // the ids are sent in chunks of "WHERE id IN (?, ?, ...)" so each chunk is one round trip
+        List<String> itemIds = new ArrayList<>(favoriteItemIds);
+        SqlQueryEvent event = SELECT_GAME_IDS.start();
+        int rows = 0;
         try {
-            PreparedStatement statement = conn.prepareStatement(sql);
-            for (String itemId : favoriteItemIds) {
-                statement.setString(1, itemId);
-                ResultSet rs = statement.executeQuery();
-                if (rs.next()) {
-                    itemMap.get(rs.getString("type")).add(rs.getString("game_id"));
+            for (int from = 0; from < itemIds.size(); from += IN_CHUNK_SIZE) {
+                List<String> chunk = itemIds.subList(from, Math.min(from + IN_CHUNK_SIZE, itemIds.size()));
+                // pad the list by repeating the last id, duplicated ids do not change the result
+                int size = inListSize(chunk.size());
+                try (PreparedStatement statement = prepare(String.format(SELECT_GAME_IDS_SQL, placeholders(size)))) {
+                    for (int i = 0; i < size; i++) {
+                        statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            rows++;
+                            itemMap.get(rs.getString("type")).add(rs.getString("game_id"));
+                        }
+                    }
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            SELECT_GAME_IDS.error(event);
             throw new MySQLException("Failed to get favorite game ids from Database");
+        } finally {
+            SELECT_GAME_IDS.record(event, rows);
         }
         return itemMap;
     }
 
+    // Get the favorite item ids and the favorite game counts (grouped by item type) of the given user in one query,
+    // it returns the same data as getFavoriteItemIds() + getFavoriteGameIds() for the recommendation.
+    public FavoriteProfile getFavoriteProfile(String userId) throws MySQLException {
+        if (conn == null) {
+            System.err.println("DB connection failed");
+            throw new MySQLException("Failed to connect to Database");
+        }
+        Set<String> favoriteItemIds = new HashSet<>();
+        Map<String, Map<String, Integer>> favoriteGameCounts = new HashMap<>();
+        Map<String, Map<String, Long>> lastFavorTimes = new HashMap<>();
+        for (ItemType type : ItemType.values()) {
+            favoriteGameCounts.put(type.toString(), new HashMap<>());
+            lastFavorTimes.put(type.toString(), new HashMap<>());
+        }
+        SqlQueryEvent event = SELECT_FAVORITE_PROFILE.start();
+        int rows = 0;
+        try (PreparedStatement statement = prepare(SELECT_FAVORITE_PROFILE_SQL)) {
+            statement.setString(1, userId);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    String type = rs.getString("type");
+                    String gameId = rs.getString("game_id");
+                    favoriteItemIds.add(rs.getString("id"));
+                    favoriteGameCounts.get(type).merge(gameId, 1, Integer::sum);
+                    // keep the latest favorite time of each game
+                    Timestamp favorTime = rs.getTimestamp("last_favor_time");
+                    if (favorTime != null) {
+                        lastFavorTimes.get(type).merge(gameId, favorTime.getTime(), Math::max);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            SELECT_FAVORITE_PROFILE.error(event);
+            throw new MySQLException("Failed to get favorite profile from Database");
+        } finally {
+            SELECT_FAVORITE_PROFILE.record(event, rows);
+        }
+        return new FavoriteProfile(favoriteItemIds, favoriteGameCounts, lastFavorTimes);
+    }
+
+    // Called for every favorite record by scanFavoriteRecords()
+    public interface FavoriteRecordHandler {
+        void accept(String userId, String itemId, String gameId);
+    }
+
+    // Read all the favorite records, the records of one user come one after another.
+    // This reads the whole table, it is only meant for offline jobs like SimilarityIndexBuilder.
+    public void scanFavoriteRecords(FavoriteRecordHandler handler) throws MySQLException {
+        if (conn == null) {
+            System.err.println("DB connection failed");
+            throw new MySQLException("Failed to connect to Database");
+        }
+        SqlQueryEvent event = SELECT_ALL_FAVORITES.start();
+        int rows = 0;
+        try (PreparedStatement statement = prepare(SELECT_ALL_FAVORITES_SQL);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rows++;
+                handler.accept(rs.getString("user_id"), rs.getString("id"), rs.getString("game_id"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            SELECT_ALL_FAVORITES.error(event);
+            throw new MySQLException("Failed to get favorite records from Database");
+        } finally {
+            SELECT_ALL_FAVORITES.record(event, rows);
+        }
+    }
+
+    // Get the saved items with the given ids, the ids that are not in the items table are ignored.
+    public List<Item> getItems(Collection<String> ids) throws MySQLException {
+        if (conn == null) {
+            System.err.println("DB connection failed");
+            throw new MySQLException("Failed to connect to Database");
+        }
+        List<Item> items = new ArrayList<>();
+        List<String> itemIds = new ArrayList<>(ids);
+        SqlQueryEvent event = SELECT_ITEMS.start();
+        int rows = 0;
+        try {
+            // same chunks and padding as getFavoriteGameIds()
+            for (int from = 0; from < itemIds.size(); from += IN_CHUNK_SIZE) {
+                List<String> chunk = itemIds.subList(from, Math.min(from + IN_CHUNK_SIZE, itemIds.size()));
+                int size = inListSize(chunk.size());
+                try (PreparedStatement statement = prepare(String.format(SELECT_ITEMS_SQL, placeholders(size)))) {
+                    for (int i = 0; i < size; i++) {
+                        statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            rows++;
+                            items.add(readItem(rs));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            SELECT_ITEMS.error(event);
+            throw new MySQLException("Failed to get items from Database");
+        } finally {
+            SELECT_ITEMS.record(event, rows);
+        }
+        return items;
+    }
+
     // Verify if the given user id and password are correct.
     // Return the user's full name when the verification passes
     public String verifyLogin(String userId, String password) throws MySQLException {
@@ -203,18 +429,23 @@ public class MySQLConnection {
             throw new MySQLException("Failed to connect to Database");
         }
         String name = "";
-        String sql = "SELECT first_name, last_name FROM users WHERE id = ? AND password = ?";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        SqlQueryEvent event = VERIFY_LOGIN.start();
+        int rows = 0;
+        try (PreparedStatement statement = prepare(VERIFY_LOGIN_SQL)) {
             statement.setString(1, userId);
             statement.setString(2, password);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                name = rs.getString("first_name") + " " + rs.getString("last_name");
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    rows = 1;
+                    name = rs.getString("first_name") + " " + rs.getString("last_name");
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            VERIFY_LOGIN.error(event);
             throw new MySQLException("Failed to verify user id and password from Database");
+        } finally {
+            VERIFY_LOGIN.record(event, rows);
         }
         return name;
     }
@@ -227,18 +458,66 @@ public class MySQLConnection {
             throw new MySQLException("Failed to connect to Database");
         }
 
-        String sql = "INSERT IGNORE INTO users VALUES (?, ?, ?, ?)";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        SqlQueryEvent event = INSERT_USER.start();
+        int rows = 0;
+        try (PreparedStatement statement = prepare(INSERT_USER_SQL)) {
             statement.setString(1, user.getUserId());
             statement.setString(2, user.getPassword());
             statement.setString(3, user.getFirstName());
             statement.setString(4, user.getLastName());
 
-            return statement.executeUpdate() == 1; //
+            rows = statement.executeUpdate();
+            return rows == 1;
         } catch (SQLException e) {
             e.printStackTrace();
+            INSERT_USER.error(event);
             throw new MySQLException("Failed to add user to database.");
+        } finally {
+            INSERT_USER.record(event, rows);
+        }
+    }
+
+    // Prepare the statement on the current connection.
+    // With the statement cache enabled the driver hands back the cached statement of the same SQL,
+    // StatementStats counts whether it was a new prepare or a cache hit.
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = conn.prepareStatement(sql);
+        StatementStats.record(statement);
+        return statement;
+    }
+
+    // Build an Item from the current row of a "SELECT items.*" query
+    private static Item readItem(ResultSet rs) throws SQLException {
+        return new Item.Builder().id(rs.getString("id"))
+                .title(rs.getString("title")).url(rs.getString("url"))
+                .thumbnailUrl(rs.getString("thumbnail_url"))
+                .broadcasterName(rs.getString("broadcaster_name"))
+                .gameId(rs.getString("game_id")).type(ItemType.valueOf(rs.getString("type"))).build();
+    }
+
+    // Build "?, ?, ?" for an IN clause with the given number of parameters
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    // Round the number of ids up to a power of two (at least MIN_IN_SIZE), but never above IN_CHUNK_SIZE
+    private static int inListSize(int count) {
+        int size = MIN_IN_SIZE;
+        while (size < count) {
+            size <<= 1;
+        }
+        return Math.min(size, IN_CHUNK_SIZE);
+    }
+
+    private static int readChunkSize() {
+        try {
+            return Math.max(1, MySQLDBUtil.getIntProperty("db.query.inChunkSize", 500));
+        } catch (IOException | NumberFormatException e) {
+            return 500;
         }
     }
 }
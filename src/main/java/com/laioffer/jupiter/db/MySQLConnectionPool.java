@@ -0,0 +1,84 @@
+package com.laioffer.jupiter.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// A pool of JDBC connections shared by the whole webapp.
+// Opening a new connection to the remote database (TCP + TLS + MySQL auth) on every servlet request
+// costs much more than the query itself, so connections are borrowed from the pool and returned on close().
+// The pool is created once when the webapp starts, the settings are read from config.properties:
+//   db.pool.minIdle, db.pool.maxSize, db.pool.connectionTimeoutMs, db.pool.validationTimeoutMs,
+//   db.pool.idleTimeoutMs, db.pool.maxLifetimeMs, db.pool.leakDetectionMs, db.statementCacheSize,
+//   and db.url / db.driverClassName to use another database than the default MySQL one
+public class MySQLConnectionPool {
+    private static volatile HikariDataSource dataSource;
+
+    // Create the pool, it is called at webapp startup, and lazily by the first connection request otherwise.
+    public static synchronized void init() throws MySQLException {
+        if (dataSource != null) {
+            return;
+        }
+        try {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("jupiter-mysql");
+            config.setDriverClassName(MySQLDBUtil.getProperty("db.driverClassName", "com.mysql.cj.jdbc.Driver"));
+            config.setJdbcUrl(MySQLDBUtil.getMySQLAddress());
+            config.setMinimumIdle(MySQLDBUtil.getIntProperty("db.pool.minIdle", 2));
+            config.setMaximumPoolSize(MySQLDBUtil.getIntProperty("db.pool.maxSize", 10));
+            // how long a request waits for a free connection before failing
+            config.setConnectionTimeout(MySQLDBUtil.getIntProperty("db.pool.connectionTimeoutMs", 3000));
+            // connections are validated by JDBC4 isValid() before they are handed out
+            config.setValidationTimeout(MySQLDBUtil.getIntProperty("db.pool.validationTimeoutMs", 1000));
+            config.setIdleTimeout(MySQLDBUtil.getIntProperty("db.pool.idleTimeoutMs", 600000));
+            // keep it shorter than the wait_timeout of the MySQL server
+            config.setMaxLifetime(MySQLDBUtil.getIntProperty("db.pool.maxLifetimeMs", 1800000));
+            // log a warning with the stack trace if a connection is not returned in time
+            config.setLeakDetectionThreshold(MySQLDBUtil.getIntProperty("db.pool.leakDetectionMs", 10000));
+            // Cache server-side prepared statements on each pooled connection, so MySQL does not parse
+            // the same SQL again for every request. Closing a statement returns it to the cache.
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize",
+                    MySQLDBUtil.getIntProperty("db.statementCacheSize", 64));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", 4096);
+            // let the driver send a JDBC batch of inserts as one multi-row statement
+            config.addDataSourceProperty("rewriteBatchedStatements", "true");
+            dataSource = new HikariDataSource(config);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to create the database connection pool");
+        }
+    }
+
+    // Borrow a connection from the pool, calling close() on it returns it to the pool.
+    public static Connection getConnection() throws MySQLException {
+        HikariDataSource ds = dataSource;
+        if (ds == null) {
+            init();
+            ds = dataSource;
+        }
+        try {
+            return ds.getConnection();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to connect to Database");
+        }
+    }
+
+    // Active/idle/waiting connections of the pool, or null if the pool has not been created.
+    public static HikariPoolMXBean getPoolStats() {
+        HikariDataSource ds = dataSource;
+        return ds == null ? null : ds.getHikariPoolMXBean();
+    }
+
+    public static synchronized void close() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+}
@@ -11,12 +11,16 @@ public class MySQLDBUtil {
     private static final String PORT_NUM = "3306";
     private static final String DB_NAME = "jupiter";
 
-    public static String getMySQLAddress() throws IOException {
-        Properties prop = new Properties();
-        String propFileName = "config.properties";
+    // config.properties is read from the classpath only once, the first time it is needed
+    private static Properties config;
 
-        InputStream inputStream = MySQLDBUtil.class.getClassLoader().getResourceAsStream(propFileName);
-        prop.load(inputStream);
+    // The JDBC URL of the database. db.url in config.properties replaces the default RDS address,
+    // e.g. to run against a local MySQL or an embedded database in the benchmarks.
+    public static String getMySQLAddress() throws IOException {
+        Properties prop = getConfig();
+        if (prop.getProperty("db.url") != null) {
+            return prop.getProperty("db.url");
+        }
         String username = prop.getProperty("user");
         String password = prop.getProperty("password");
         // Encode special characters in your password.
@@ -30,4 +34,32 @@ public class MySQLDBUtil {
                 INSTANCE, PORT_NUM, DB_NAME, username, password);
     }
 
+    // Read an optional setting from config.properties, return the default value if it is not set.
+    public static String getProperty(String key, String defaultValue) throws IOException {
+        return getConfig().getProperty(key, defaultValue);
+    }
+
+    public static int getIntProperty(String key, int defaultValue) throws IOException {
+        return Integer.parseInt(getProperty(key, String.valueOf(defaultValue)).trim());
+    }
+
+    private static synchronized Properties getConfig() throws IOException {
+        if (config == null) {
+            Properties prop = new Properties();
+            String propFileName = "config.properties";
+
+            InputStream inputStream = MySQLDBUtil.class.getClassLoader().getResourceAsStream(propFileName);
+            if (inputStream == null) {
+                throw new IOException(propFileName + " is not found in the classpath");
+            }
+            try {
+                prop.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+            config = prop;
+        }
+        return config;
+    }
+
 }
@@ -0,0 +1,166 @@
+package com.laioffer.jupiter.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Versioned schema migrations.
+// Each migration has a version number and is applied only once, the applied versions are recorded in the
+// schema_version table. Every step is also safe to re-run (CREATE TABLE IF NOT EXISTS, indexes are only created
+// if missing), so running the migrator again, or on a database created by the old MySQLTableCreator, never
+// drops any data. New schema changes are added as a new migration at the end of MIGRATIONS.
+public class MySQLMigrator {
+    private static final String LOCK_NAME = "jupiter_schema_migration";
+    private static final int LOCK_TIMEOUT_SEC = 30;
+
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    static {
+        MIGRATIONS.add(new Migration(1, "create items, users and favorite_records", statement -> {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS items ("
+                    + "id VARCHAR(255) NOT NULL,"
+                    + "title VARCHAR(255),"
+                    + "url VARCHAR(255),"
+                    + "thumbnail_url VARCHAR(255),"
+                    + "broadcaster_name VARCHAR(255),"
+                    + "game_id VARCHAR(255),"
+                    + "type VARCHAR(255) NOT NULL,"
+                    + "PRIMARY KEY (id)"
+                    + ")");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS users ("
+                    + "id VARCHAR(255) NOT NULL,"
+                    + "password VARCHAR(255) NOT NULL,"
+                    + "first_name VARCHAR(255),"
+                    + "last_name VARCHAR(255),"
+                    + "PRIMARY KEY (id)"
+                    + ")");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS favorite_records ("
+                    + "user_id VARCHAR(255) NOT NULL,"
+                    + "item_id VARCHAR(255) NOT NULL,"
+                    + "last_favor_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                    + "PRIMARY KEY (user_id, item_id)," // combination primary key
+                    + "FOREIGN KEY (user_id) REFERENCES users(id),"
+                    + "FOREIGN KEY (item_id) REFERENCES items(id)"
+                    + ")");
+            // a fake user 1111/3229c1097c00d497a0fd282d586be050 for test.
+            statement.executeUpdate(
+                    "INSERT IGNORE INTO users VALUES('1111', '3229c1097c00d497a0fd282d586be050', 'John', 'Smith')");
+        }));
+        // Indexes for the access paths of the recommendation:
+        // user -> favorite items is served by the primary key (user_id, item_id) of favorite_records,
+        // item -> (type, game_id) by the clustered primary key of items.
+        // items(game_id, type) serves the lookups of the favorite items of one game,
+        // favorite_records(item_id, user_id) serves the lookups starting from an item, like "who favorites this item".
+        MIGRATIONS.add(new Migration(2, "add secondary indexes for recommendation", statement -> {
+            createIndexIfMissing(statement, "items", "idx_items_game_type", "game_id, type");
+            createIndexIfMissing(statement, "favorite_records", "idx_favorite_records_item_user", "item_id, user_id");
+        }));
+    }
+
+    // Run this as a Java application to create or upgrade the database.
+    public static void main(String[] args) {
+        try {
+            System.out.println("Migrating " + MySQLDBUtil.getMySQLAddress());
+            migrate();
+            System.out.println("Migration done successfully");
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            MySQLConnectionPool.close();
+        }
+    }
+
+    // Apply all the migrations that have not been applied yet, in the order of their versions.
+    public static void migrate() throws MySQLException {
+        try (Connection conn = MySQLConnectionPool.getConnection();
+             Statement statement = conn.createStatement()) {
+            // several webapp instances may start at the same time, only one of them runs the migrations
+            if (!acquireLock(conn)) {
+                throw new MySQLException("Failed to get the schema migration lock");
+            }
+            try {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version ("
+                        + "version INT NOT NULL,"
+                        + "description VARCHAR(255),"
+                        + "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                        + "PRIMARY KEY (version)"
+                        + ")");
+                int current = currentVersion(statement);
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version <= current) {
+                        continue;
+                    }
+                    System.out.println("Applying migration " + migration.version + ": " + migration.description);
+                    migration.step.apply(statement);
+                    try (PreparedStatement insert = conn.prepareStatement(
+                            "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                        insert.setInt(1, migration.version);
+                        insert.setString(2, migration.description);
+                        insert.executeUpdate();
+                    }
+                }
+            } finally {
+                releaseLock(conn);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new MySQLException("Failed to migrate the database schema");
+        }
+    }
+
+    private static int currentVersion(Statement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // MySQL has no "CREATE INDEX IF NOT EXISTS", so check information_schema first
+    private static void createIndexIfMissing(Statement statement, String table, String index, String columns)
+            throws SQLException {
+        String sql = "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() "
+                + "AND table_name = '" + table + "' AND index_name = '" + index + "'";
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                return;
+            }
+        }
+        statement.executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+    }
+
+    private static boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.setInt(2, LOCK_TIMEOUT_SEC);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        }
+    }
+
+    private interface Step {
+        void apply(Statement statement) throws SQLException;
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
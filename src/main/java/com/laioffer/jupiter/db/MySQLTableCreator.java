@@ -1,79 +1,10 @@
 package com.laioffer.jupiter.db;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
-
 public class MySQLTableCreator {
-    // Run this as a Java application to reset the database.
+    // Run this as a Java application to create the database, or upgrade it to the latest schema.
+    // It used to drop and recreate all the tables, now the tables are created by the versioned migrations
+    // in MySQLMigrator, so running it again keeps all the existing users and favorite records.
     public static void main(String[] args) {
-        try {
-
-            // check the following example of how to connect to MySQL and execute SQL queries with JDBC library:
-            // https://dev.mysql.com/doc/connector-j/8.0/en/connector-j-usagenotes-connect-drivermanager.html
-            // Step 1 Connect to MySQL.
-            System.out.println("Connecting to " + MySQLDBUtil.getMySQLAddress());
-            Class.forName("com.mysql.cj.jdbc.Driver").newInstance();
-            Connection conn = DriverManager.getConnection(MySQLDBUtil.getMySQLAddress());
-
-            if (conn == null) {
-                return;
-            }
-
-            // Step 2 Drop tables in case they exist.
-            // this means whenever this main function is called
-            // it will drop all the tables if existed before creates new ones
-            Statement statement = conn.createStatement();
-            String sql = "DROP TABLE IF EXISTS favorite_records";
-            statement.executeUpdate(sql);
-
-            sql = "DROP TABLE IF EXISTS items";
-            statement.executeUpdate(sql);
-
-            sql = "DROP TABLE IF EXISTS users";
-            statement.executeUpdate(sql);
-
-            // Step 3 Create new tables.
-            sql = "CREATE TABLE items ("
-                    + "id VARCHAR(255) NOT NULL,"
-                    + "title VARCHAR(255),"
-                    + "url VARCHAR(255),"
-                    + "thumbnail_url VARCHAR(255),"
-                    + "broadcaster_name VARCHAR(255),"
-                    + "game_id VARCHAR(255),"
-                    + "type VARCHAR(255) NOT NULL,"
-                    + "PRIMARY KEY (id)"
-                    + ")";
-            statement.executeUpdate(sql);
-
-            sql = "CREATE TABLE users ("
-                    + "id VARCHAR(255) NOT NULL,"
-                    + "password VARCHAR(255) NOT NULL,"
-                    + "first_name VARCHAR(255),"
-                    + "last_name VARCHAR(255),"
-                    + "PRIMARY KEY (id)"
-                    + ")";
-            statement.executeUpdate(sql);
-
-            sql = "CREATE TABLE favorite_records ("
-                    + "user_id VARCHAR(255) NOT NULL,"
-                    + "item_id VARCHAR(255) NOT NULL,"
-                    + "last_favor_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
-                    + "PRIMARY KEY (user_id, item_id)," // combination primary key
-                    + "FOREIGN KEY (user_id) REFERENCES users(id),"
-                    + "FOREIGN KEY (item_id) REFERENCES items(id)"
-                    + ")";
-            statement.executeUpdate(sql);
-
-            // Step 4: insert a fake user 1111/3229c1097c00d497a0fd282d586be050 for test.
-            sql = "INSERT INTO users VALUES('1111', '3229c1097c00d497a0fd282d586be050', 'John', 'Smith')";
-            statement.executeUpdate(sql);
-
-            conn.close();
-            System.out.println("Import done successfully");
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
+        MySQLMigrator.main(args);
     }
 }
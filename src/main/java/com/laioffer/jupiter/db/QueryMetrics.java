@@ -0,0 +1,46 @@
+package com.laioffer.jupiter.db;
+
+import com.laioffer.jupiter.metrics.Counter;
+import com.laioffer.jupiter.metrics.LatencyHistogram;
+import com.laioffer.jupiter.metrics.MetricFamily;
+import com.laioffer.jupiter.metrics.MetricsRegistry;
+import com.laioffer.jupiter.metrics.RequestTiming;
+import com.laioffer.jupiter.metrics.SqlQueryEvent;
+
+// Latency and error count of one query of MySQLConnection, exported at /metrics with the query name as label.
+// The query is also a "mysql.<query>" span of the current request, see RequestTiming, and a JFR SqlQueryEvent.
+// The histogram and counter are looked up once, when MySQLConnection is loaded, so recording is just two adds.
+class QueryMetrics {
+    private static final MetricFamily<LatencyHistogram> DURATION = MetricsRegistry.getInstance().histogram(
+            "jupiter_sql_query_duration_seconds", "Time to run the query, including reading the result", "query");
+    private static final MetricFamily<Counter> ERRORS = MetricsRegistry.getInstance().counter(
+            "jupiter_sql_query_errors_total", "Queries that failed with an SQLException", "query");
+
+    private final String query;
+    private final String spanName;
+    private final LatencyHistogram duration;
+    private final Counter errors;
+
+    QueryMetrics(String query) {
+        this.query = query;
+        this.spanName = "mysql." + query;
+        this.duration = DURATION.labels(query);
+        this.errors = ERRORS.labels(query);
+    }
+
+    // call before the query, then record() when it is done
+    SqlQueryEvent start() {
+        return SqlQueryEvent.start();
+    }
+
+    void record(SqlQueryEvent event, int rows) {
+        duration.recordSince(event.getStartNanos());
+        RequestTiming.record(spanName, event.getStartNanos());
+        event.finish(query, rows);
+    }
+
+    void error(SqlQueryEvent event) {
+        errors.increment();
+        event.fail();
+    }
+}
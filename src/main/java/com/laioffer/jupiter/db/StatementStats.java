@@ -0,0 +1,44 @@
+package com.laioffer.jupiter.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts how many statements are really prepared vs. served from the driver's statement cache.
+// When the cache has the SQL, MySQL Connector/J hands back the same statement object it cached before,
+// so a statement object we have seen already means a cache hit. Objects are kept in a weak set,
+// statements dropped by the driver (or closed with their connection) are garbage collected as usual.
+public class StatementStats {
+    private static final LongAdder PREPARES = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final Set<PreparedStatement> SEEN =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<PreparedStatement, Boolean>()));
+
+    static void record(PreparedStatement statement) {
+        PreparedStatement driverStatement = statement;
+        try {
+            // the pool wraps the statement of the driver, look at the real one
+            driverStatement = statement.unwrap(PreparedStatement.class);
+        } catch (SQLException e) {
+            // not wrapped
+        }
+        if (SEEN.add(driverStatement)) {
+            PREPARES.increment();
+        } else {
+            CACHE_HITS.increment();
+        }
+    }
+
+    // number of statements parsed by the server
+    public static long getPrepares() {
+        return PREPARES.sum();
+    }
+
+    // number of statements reused from the cache
+    public static long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+}
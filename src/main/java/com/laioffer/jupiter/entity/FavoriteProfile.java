@@ -0,0 +1,94 @@
+package com.laioffer.jupiter.entity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// The favorite history of a user that the recommendation needs:
+// the ids of the favorite items, and for each item type, how many favorite items the user has of each game, like
+// {"VIDEO": {"1234": 2, "5678": 1}, "STREAM": {"abcd": 1}, "CLIP": {}}
+// and when the user last added a favorite item of each game (epoch millis, same layout),
+// so recent interests can weigh more than old ones.
+// A profile is read-only, withFavorite() and withoutFavorite() return an updated copy,
+// so it can be shared by concurrent requests.
+public class FavoriteProfile {
+    private final Set<String> favoriteItemIds;
+    private final Map<String, Map<String, Integer>> favoriteGameCounts;
+    private final Map<String, Map<String, Long>> lastFavorTimes;
+
+    public FavoriteProfile(Set<String> favoriteItemIds, Map<String, Map<String, Integer>> favoriteGameCounts) {
+        this(favoriteItemIds, favoriteGameCounts, new HashMap<>());
+    }
+
+    public FavoriteProfile(Set<String> favoriteItemIds, Map<String, Map<String, Integer>> favoriteGameCounts,
+                           Map<String, Map<String, Long>> lastFavorTimes) {
+        this.favoriteItemIds = Collections.unmodifiableSet(favoriteItemIds);
+        this.favoriteGameCounts = byType(favoriteGameCounts);
+        this.lastFavorTimes = byType(lastFavorTimes);
+    }
+
+    public Set<String> getFavoriteItemIds() {
+        return favoriteItemIds;
+    }
+
+    public Map<String, Map<String, Integer>> getFavoriteGameCounts() {
+        return favoriteGameCounts;
+    }
+
+    public Map<String, Map<String, Long>> getLastFavorTimes() {
+        return lastFavorTimes;
+    }
+
+    // Return a copy of the profile with the item added.
+    public FavoriteProfile withFavorite(Item item) {
+        if (favoriteItemIds.contains(item.getId())) {
+            return this;
+        }
+        Set<String> itemIds = new HashSet<>(favoriteItemIds);
+        itemIds.add(item.getId());
+        Map<String, Map<String, Integer>> counts = copy(favoriteGameCounts);
+        counts.get(item.getType().toString()).merge(item.getGameId(), 1, Integer::sum);
+        Map<String, Map<String, Long>> times = copy(lastFavorTimes);
+        times.get(item.getType().toString()).put(item.getGameId(), System.currentTimeMillis());
+        return new FavoriteProfile(itemIds, counts, times);
+    }
+
+    // Return a copy of the profile with the item removed.
+    public FavoriteProfile withoutFavorite(Item item) {
+        if (!favoriteItemIds.contains(item.getId())) {
+            return this;
+        }
+        Set<String> itemIds = new HashSet<>(favoriteItemIds);
+        itemIds.remove(item.getId());
+        Map<String, Map<String, Integer>> counts = copy(favoriteGameCounts);
+        // remove the game when its count drops to 0
+        Integer count = counts.get(item.getType().toString())
+                .computeIfPresent(item.getGameId(), (k, v) -> v > 1 ? v - 1 : null);
+        Map<String, Map<String, Long>> times = copy(lastFavorTimes);
+        if (count == null) {
+            times.get(item.getType().toString()).remove(item.getGameId());
+        }
+        return new FavoriteProfile(itemIds, counts, times);
+    }
+
+    // read-only copy with an entry for every item type
+    private static <V> Map<String, Map<String, V>> byType(Map<String, Map<String, V>> values) {
+        Map<String, Map<String, V>> result = new HashMap<>();
+        for (ItemType type : ItemType.values()) {
+            Map<String, V> gameValues = values.get(type.toString());
+            result.put(type.toString(),
+                    Collections.unmodifiableMap(gameValues == null ? new HashMap<>() : gameValues));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static <V> Map<String, Map<String, V>> copy(Map<String, Map<String, V>> values) {
+        Map<String, Map<String, V>> result = new HashMap<>();
+        for (Map.Entry<String, Map<String, V>> entry : values.entrySet()) {
+            result.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        }
+        return result;
+    }
+}
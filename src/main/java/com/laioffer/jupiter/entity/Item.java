@@ -36,6 +36,20 @@ public class Item {
     @JsonProperty("item_type")
     private ItemType type;
 
+    // used to rank the recommendation, streams have viewer_count, videos and clips have view_count.
+    // These 3 are only read from Twitch, they are not part of our API: they are not written to the responses,
+    // where they would also change the ETag of a cached payload every time a viewer count changes
+    @JsonProperty(value = "viewer_count", access = JsonProperty.Access.WRITE_ONLY)
+    private final Integer viewerCount;
+
+    @JsonProperty(value = "view_count", access = JsonProperty.Access.WRITE_ONLY)
+    private final Integer viewCount;
+
+    // when the video/clip was created, or the stream started
+    @JsonProperty(value = "created_at", access = JsonProperty.Access.WRITE_ONLY)
+    @JsonAlias({"started_at"})
+    private final String createdAt;
+
     private Item(Builder builder) {
         this.id = builder.id;
         this.title = builder.title;
@@ -44,6 +58,9 @@ public class Item {
         this.broadcasterName = builder.broadcasterName;
         this.gameId = builder.gameId;
         this.type = builder.type;
+        this.viewerCount = builder.viewerCount;
+        this.viewCount = builder.viewCount;
+        this.createdAt = builder.createdAt;
     }
 
     // Item class has some setters as well because fields like type, url and gameId may not return from Twitch,
@@ -90,6 +107,18 @@ public class Item {
         return this;
     }
 
+    public Integer getViewerCount() {
+        return viewerCount;
+    }
+
+    public Integer getViewCount() {
+        return viewCount;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
     @JsonIgnoreProperties(ignoreUnknown = true)
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class Builder {
@@ -115,6 +144,16 @@ public class Item {
         @JsonProperty("item_type")
         private ItemType type;
 
+        @JsonProperty("viewer_count")
+        private Integer viewerCount;
+
+        @JsonProperty("view_count")
+        private Integer viewCount;
+
+        @JsonProperty("created_at")
+        @JsonAlias({"started_at"})
+        private String createdAt;
+
         public Builder id(String id) {
             this.id = id;
             return this;
@@ -150,6 +189,21 @@ public class Item {
             return this;
         }
 
+        public Builder viewerCount(Integer viewerCount) {
+            this.viewerCount = viewerCount;
+            return this;
+        }
+
+        public Builder viewCount(Integer viewCount) {
+            this.viewCount = viewCount;
+            return this;
+        }
+
+        public Builder createdAt(String createdAt) {
+            this.createdAt = createdAt;
+            return this;
+        }
+
         public Item build() {
             return new Item(this);
         }
@@ -0,0 +1,140 @@
+package com.laioffer.jupiter.external;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Circuit breaker over the last twitch.breaker.windowSize calls of one endpoint.
+// CLOSED: calls go through. When at least minCalls calls are recorded and the failure rate or the slow call rate
+// reaches its threshold, the breaker opens.
+// OPEN: calls fail right away for openDurationMs, instead of waiting for a socket timeout.
+// HALF_OPEN: a few probe calls go through, if they all succeed fast the breaker closes, otherwise it opens again.
+public class CircuitBreaker {
+    private static final int WINDOW_SIZE = Integer.getInteger("twitch.breaker.windowSize", 20);
+    private static final int MIN_CALLS = Integer.getInteger("twitch.breaker.minCalls", 10);
+    private static final int FAILURE_RATE_PERCENT = Integer.getInteger("twitch.breaker.failureRatePercent", 50);
+    private static final long SLOW_CALL_MS = Long.getLong("twitch.breaker.slowCallMs", 2000L);
+    private static final int SLOW_CALL_RATE_PERCENT = Integer.getInteger("twitch.breaker.slowCallRatePercent", 80);
+    private static final long OPEN_DURATION_MS = Long.getLong("twitch.breaker.openDurationMs", 30000L);
+    private static final int HALF_OPEN_CALLS = Integer.getInteger("twitch.breaker.halfOpenCalls", 3);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final long openDurationMs;
+
+    // all guarded by this
+    private State state = State.CLOSED;
+    // ring buffer of the outcomes of the last calls
+    private final boolean[] failed = new boolean[WINDOW_SIZE];
+    private final boolean[] slow = new boolean[WINDOW_SIZE];
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+    // number of transitions, by "FROM->TO"
+    private final Map<String, Long> transitions = new TreeMap<>();
+
+    public CircuitBreaker(String name) {
+        this(name, OPEN_DURATION_MS);
+    }
+
+    // for the tests, which cannot wait for the default open duration
+    CircuitBreaker(String name, long openDurationMs) {
+        this.name = name;
+        this.openDurationMs = openDurationMs;
+    }
+
+    // Return true if a call may go through, then onResult() or onCancel() must be called after the call.
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= HALF_OPEN_CALLS) {
+                return false;
+            }
+            probesInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onResult(boolean success, long durationMs) {
+        boolean isSlow = durationMs >= SLOW_CALL_MS;
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (!success || isSlow) {
+                transitionTo(State.OPEN);
+            } else if (++probeSuccesses >= HALF_OPEN_CALLS) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // a call started before the breaker opened
+            return;
+        }
+        record(!success, isSlow);
+        if (calls >= MIN_CALLS && (failures * 100 >= FAILURE_RATE_PERCENT * calls
+                || slowCalls * 100 >= SLOW_CALL_RATE_PERCENT * calls)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    // The call was not sent after all, e.g. it was stopped by the rate limiter.
+    public synchronized void onCancel() {
+        if (state == State.HALF_OPEN && probesInFlight > 0) {
+            probesInFlight--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Long> getTransitions() {
+        return new TreeMap<>(transitions);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void record(boolean isFailure, boolean isSlow) {
+        if (calls == WINDOW_SIZE) {
+            // forget the oldest call
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = isFailure;
+        slow[next] = isSlow;
+        failures += isFailure ? 1 : 0;
+        slowCalls += isSlow ? 1 : 0;
+        next = (next + 1) % WINDOW_SIZE;
+    }
+
+    private void transitionTo(State to) {
+        System.out.println("Circuit breaker " + name + ": " + state + " -> " + to);
+        transitions.merge(state + "->" + to, 1L, Long::sum);
+        state = to;
+        // every state starts with a clean window
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        if (to == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+    }
+}
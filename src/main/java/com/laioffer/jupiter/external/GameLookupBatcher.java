@@ -0,0 +1,113 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.entity.Game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+// Micro-batching of the game lookups.
+// Helix /games accepts up to 100 id or name parameters in one call, so instead of sending one request per game,
+// the lookups that arrive within twitch.gameBatch.windowMs are collected and sent together.
+// A batch is sent earlier if it is full. The same name/id asked twice in a window is only sent once.
+class GameLookupBatcher {
+    static final int MAX_BATCH_SIZE = 100;
+    private static final long WINDOW_MS = Long.getLong("twitch.gameBatch.windowMs", 10L);
+
+    // the function that sends one batch to Twitch
+    private final Function<List<String>, List<Game>> fetcher;
+    // how to find the requested key in a returned game, the id or the name
+    private final Function<Game, String> keyOf;
+
+    // lookups waiting for the next batch, guarded by this
+    private Map<String, CompletableFuture<Game>> pending = new LinkedHashMap<>();
+
+    GameLookupBatcher(Function<List<String>, List<Game>> fetcher, Function<Game, String> keyOf) {
+        this.fetcher = fetcher;
+        this.keyOf = keyOf;
+    }
+
+    // The future completes with the game, or with null if Twitch does not know it.
+    CompletableFuture<Game> lookup(String key) {
+        Map<String, CompletableFuture<Game>> full = null;
+        CompletableFuture<Game> future;
+        synchronized (this) {
+            future = pending.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            if (pending.isEmpty()) {
+                // the first lookup of a batch starts the window
+                TwitchExecutor.schedule(this::flush, WINDOW_MS);
+            }
+            pending.put(key, future);
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                full = pending;
+                pending = new LinkedHashMap<>();
+            }
+        }
+        if (full != null) {
+            submit(full);
+        }
+        return future;
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<Game>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                // already sent because it was full
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        submit(batch);
+    }
+
+    // Called by the timer thread when the window ends, so the batch must never be sent on the calling thread:
+    // the executor rejects tasks when it is full, and the lookups of the batch fail instead.
+    private void submit(Map<String, CompletableFuture<Game>> batch) {
+        try {
+            TwitchExecutor.get().execute(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            // the executor is saturated or shut down
+            fail(batch, new TwitchUnavailableException("Too many pending requests to Twitch"));
+        }
+    }
+
+    private void send(Map<String, CompletableFuture<Game>> batch) {
+        List<Game> games;
+        try {
+            games = fetcher.apply(new ArrayList<>(batch.keySet()));
+        } catch (RuntimeException e) {
+            fail(batch, e);
+            return;
+        }
+        // Twitch may not return the games in the order of the request, and it ignores the case of the names
+        Map<String, Game> gamesByKey = new HashMap<>();
+        for (Game game : games) {
+            gamesByKey.put(normalize(keyOf.apply(game)), game);
+        }
+        for (Map.Entry<String, CompletableFuture<Game>> entry : batch.entrySet()) {
+            entry.getValue().complete(gamesByKey.get(normalize(entry.getKey())));
+        }
+    }
+
+    private static void fail(Map<String, CompletableFuture<Game>> batch, RuntimeException e) {
+        for (CompletableFuture<Game> future : batch.values()) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static String normalize(String key) {
+        return key == null ? null : key.toLowerCase(Locale.ROOT);
+    }
+}
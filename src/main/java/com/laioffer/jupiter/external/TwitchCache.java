@@ -0,0 +1,228 @@
+package com.laioffer.jupiter.external;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.laioffer.jupiter.entity.ItemType;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// In-process cache in front of the Twitch API.
+// Top games and the streams/videos/clips of a game change on a minutes scale and are the same for every user,
+// so we keep the results for a short time instead of asking Twitch again on every request.
+// Caffeine evicts by size with W-TinyLFU, and each entry expires by the TTL of its item type.
+// The cache stores futures, so concurrent misses of the same key wait for one upstream call.
+public class TwitchCache {
+    private static final long MAX_SIZE = Long.getLong("twitch.cache.maxSize", 10000L);
+    private static final long GAME_TTL_SEC = Long.getLong("twitch.cache.gameTtlSec", 300L);
+    private static final long STREAM_TTL_SEC = Long.getLong("twitch.cache.streamTtlSec", 60L);
+    private static final long VIDEO_TTL_SEC = Long.getLong("twitch.cache.videoTtlSec", 600L);
+    private static final long CLIP_TTL_SEC = Long.getLong("twitch.cache.clipTtlSec", 300L);
+    // how long the last good result is kept as a fallback after it expired from the cache
+    private static final long STALE_TTL_SEC = Long.getLong("twitch.cache.staleTtlSec", 3600L);
+    // endpoint of the keys holding the items of all the types, they expire with the shortest type TTL
+    public static final String ALL_TYPES_ENDPOINT = "items/all";
+
+    private static final TwitchCache INSTANCE = new TwitchCache();
+
+    private final AsyncCache<Key, Object> cache;
+    // last good value of each key, used when Twitch is unavailable
+    private final Cache<Key, Object> lastGood;
+
+    private TwitchCache() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(MAX_SIZE)
+                .expireAfter(new TtlByType())
+                .recordStats()
+                .buildAsync();
+        lastGood = Caffeine.newBuilder()
+                .maximumSize(MAX_SIZE)
+                .expireAfterWrite(STALE_TTL_SEC, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public static TwitchCache getInstance() {
+        return INSTANCE;
+    }
+
+    // Return the cached value of the key, or load it in the calling thread if it is absent.
+    // If another thread is already loading the same key, wait for its result instead.
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, Supplier<T> loader) throws TwitchException {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> future = cache.get(key, (k, executor) -> created);
+        if (future == created) {
+            // nobody has loaded this key yet, so load it here and wake up the threads waiting for it
+            try {
+                T value = loader.get();
+                lastGood.put(key, value);
+                created.complete(value);
+                return value;
+            } catch (RuntimeException e) {
+                // Caffeine drops the failed future, so the failure is not cached
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new TwitchException("Failed to get result from Twitch API");
+        }
+    }
+
+    // Asynchronous version of get(), the loader runs in the shared Twitch executor.
+    // If the executor is saturated the future fails right away, and Caffeine drops it, so the next call retries.
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsync(Key key, Supplier<T> loader) {
+        return (CompletableFuture<T>) cache.get(key, (k, executor) ->
+                TwitchExecutor.<Object>supplyAsync(loader::get).whenComplete(rememberLastGood(k)));
+    }
+
+    // Like getAsync(), for loaders that are already asynchronous, e.g. a lookup waiting for its batch.
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsyncFuture(Key key, Supplier<CompletableFuture<T>> loader) {
+        return (CompletableFuture<T>) cache.get(key, (k, executor) ->
+                ((CompletableFuture<Object>) loader.get()).whenComplete(rememberLastGood(k)));
+    }
+
+    // Load the key again even if it is cached, and replace the cached value when the load succeeds,
+    // until then the other callers keep getting the current value. A failed refresh leaves the cache as it is.
+    public <T> T refresh(Key key, Supplier<T> loader) throws TwitchException {
+        T value = loader.get();
+        put(key, value);
+        return value;
+    }
+
+    // Asynchronous version of refresh(), the loader runs in the shared Twitch executor.
+    public <T> CompletableFuture<T> refreshAsync(Key key, Supplier<T> loader) {
+        return TwitchExecutor.supplyAsync(loader).whenComplete((value, error) -> {
+            if (error == null && value != null) {
+                put(key, value);
+            }
+        });
+    }
+
+    // Return the cached value of the key, or null if it is absent or still loading.
+    @SuppressWarnings("unchecked")
+    public <T> T getIfPresent(Key key) {
+        CompletableFuture<Object> future = cache.getIfPresent(key);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return (T) future.join();
+    }
+
+    public void put(Key key, Object value) {
+        lastGood.put(key, value);
+        cache.put(key, CompletableFuture.completedFuture(value));
+    }
+
+    // Return the last good value of the key, even if it has expired from the cache, or null.
+    @SuppressWarnings("unchecked")
+    public <T> T getStale(Key key) {
+        CompletableFuture<Object> future = cache.getIfPresent(key);
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            return (T) future.join();
+        }
+        return (T) lastGood.getIfPresent(key);
+    }
+
+    private BiConsumer<Object, Throwable> rememberLastGood(Key key) {
+        return (value, error) -> {
+            if (error == null && value != null) {
+                lastGood.put(key, value);
+            }
+        };
+    }
+
+    // Hit/miss/eviction counters of the cache
+    public CacheStats getStats() {
+        return cache.synchronous().stats();
+    }
+
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    // Cache key, one Twitch endpoint with its query parameters
+    public static class Key {
+        private final String endpoint;
+        private final String query;
+        private final ItemType type;
+        private final int limit;
+
+        public Key(String endpoint, String query, ItemType type, int limit) {
+            this.endpoint = endpoint;
+            this.query = query;
+            this.type = type;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return limit == key.limit && endpoint.equals(key.endpoint)
+                    && Objects.equals(query, key.query) && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(endpoint, query, type, limit);
+        }
+    }
+
+    // Streams are live so they expire quickly, videos and clips do not change that often.
+    private static class TtlByType implements Expiry<Key, Object> {
+        @Override
+        public long expireAfterCreate(Key key, Object value, long currentTime) {
+            long ttlSec = GAME_TTL_SEC;
+            if (ALL_TYPES_ENDPOINT.equals(key.endpoint)) {
+                ttlSec = Math.min(STREAM_TTL_SEC, Math.min(VIDEO_TTL_SEC, CLIP_TTL_SEC));
+            } else if (key.type != null) {
+                switch (key.type) {
+                    case STREAM:
+                        ttlSec = STREAM_TTL_SEC;
+                        break;
+                    case VIDEO:
+                        ttlSec = VIDEO_TTL_SEC;
+                        break;
+                    case CLIP:
+                        ttlSec = CLIP_TTL_SEC;
+                        break;
+                }
+            }
+            return TimeUnit.SECONDS.toNanos(ttlSec);
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Object value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
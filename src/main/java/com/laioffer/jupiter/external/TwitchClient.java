@@ -1,22 +1,36 @@
 package com.laioffer.jupiter.external;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.laioffer.jupiter.entity.Game;
 import com.laioffer.jupiter.entity.Item;
 import com.laioffer.jupiter.entity.ItemType;
+import com.laioffer.jupiter.metrics.Counter;
+import com.laioffer.jupiter.metrics.LatencyHistogram;
+import com.laioffer.jupiter.metrics.MetricFamily;
+import com.laioffer.jupiter.metrics.MetricsRegistry;
+import com.laioffer.jupiter.metrics.RequestTiming;
+import com.laioffer.jupiter.metrics.TwitchRequestEvent;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
-import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.laioffer.jupiter.external.TwitchCredential.YOUR_CLIENT_ID;
 import static com.laioffer.jupiter.external.TwitchCredential.YOUR_TOKEN;
@@ -26,74 +40,338 @@ public class TwitchClient {
     // this token is generated when we send POST request including client id & secret token to twitch
     private static final String TOKEN = YOUR_TOKEN.getInfo();
     private static final String CLIENT_ID = YOUR_CLIENT_ID.getInfo();
-    private static final String TOP_GAME_URL = "https://api.twitch.tv/helix/games/top?first=%s";
-    private static final String GAME_SEARCH_URL_TEMPLATE = "https://api.twitch.tv/helix/games?name=%s";
+    // Helix root, point it to a local stand-in for load tests, e.g. -Dtwitch.api.baseUrl=http://localhost:8089/helix
+    private static final String HELIX_BASE_URL = System.getProperty("twitch.api.baseUrl", "https://api.twitch.tv/helix");
+    private static final String TOP_GAME_URL = HELIX_BASE_URL + "/games/top?first=%s";
+    private static final String GAME_SEARCH_URL_TEMPLATE = HELIX_BASE_URL + "/games?name=%s";
+    // several games in one call, e.g. https://api.twitch.tv/helix/games?name=Fortnite&name=Minecraft
+    private static final String GAME_BATCH_URL = HELIX_BASE_URL + "/games?";
+    private static final String GAME_BY_ID_URL_TEMPLATE = HELIX_BASE_URL + "/games?id=%s";
     private static final int DEFAULT_GAME_LIMIT = 20;
 
-    private static final String STREAM_SEARCH_URL_TEMPLATE = "https://api.twitch.tv/helix/streams?game_id=%s&first=%s";
-    private static final String VIDEO_SEARCH_URL_TEMPLATE = "https://api.twitch.tv/helix/videos?game_id=%s&first=%s";
-    private static final String CLIP_SEARCH_URL_TEMPLATE = "https://api.twitch.tv/helix/clips?game_id=%s&first=%s";
+    private static final String STREAM_SEARCH_URL_TEMPLATE = HELIX_BASE_URL + "/streams?game_id=%s&first=%s";
+    private static final String VIDEO_SEARCH_URL_TEMPLATE = HELIX_BASE_URL + "/videos?game_id=%s&first=%s";
+    private static final String CLIP_SEARCH_URL_TEMPLATE = HELIX_BASE_URL + "/clips?game_id=%s&first=%s";
     // we need Twitch base url to build up the corresponding url to return to clients
     private static final String TWITCH_BASE_URL = "https://www.twitch.tv/";
     private static final int DEFAULT_SEARCH_LIMIT = 20;
+    // Helix returns at most 100 results per page, larger searches follow the pagination cursor
+    private static final int MAX_PAGE_SIZE = 100;
+    // how long searchItems() waits for all the item types
+    private static final long SEARCH_DEADLINE_MS = Long.getLong("twitch.search.deadlineMs", 3000L);
+
+    // 429 and 5xx answers are retried with a jittered exponential backoff
+    private static final int MAX_ATTEMPTS = Integer.getInteger("twitch.retry.maxAttempts", 3);
+    private static final long RETRY_BASE_DELAY_MS = Long.getLong("twitch.retry.baseDelayMs", 200L);
+    private static final long RETRY_MAX_DELAY_MS = Long.getLong("twitch.retry.maxDelayMs", 2000L);
+
+    // latency of every attempt, its status ("io_error" when there is no answer) and the size of the body
+    private static final MetricFamily<LatencyHistogram> REQUEST_DURATION = MetricsRegistry.getInstance().histogram(
+            "jupiter_twitch_request_duration_seconds", "Time of one request to the Twitch API", "endpoint");
+    private static final MetricFamily<Counter> RESPONSES = MetricsRegistry.getInstance().counter(
+            "jupiter_twitch_responses_total", "Answers of the Twitch API, by status", "endpoint", "status");
+    private static final MetricFamily<Counter> RESPONSE_BYTES = MetricsRegistry.getInstance().counter(
+            "jupiter_twitch_response_bytes_total", "Bytes of the bodies returned by the Twitch API", "endpoint");
+
+    private static final TwitchCache CACHE = TwitchCache.getInstance();
+    private static final TwitchRateLimiter RATE_LIMITER = TwitchRateLimiter.getInstance();
+    // concurrent single game lookups are sent to Twitch together,
+    // with one batcher per priority so that a batch is sent with the priority of the clients it serves
+    private static final Map<TwitchRateLimiter.Priority, GameLookupBatcher> NAME_BATCHERS =
+            gameBatchers("name", Game::getName);
+    private static final Map<TwitchRateLimiter.Priority, GameLookupBatcher> ID_BATCHERS =
+            gameBatchers("id", Game::getId);
+
+    // requests of the background jobs give way to the requests of the users when we are close to the rate limit
+    private final TwitchRateLimiter.Priority priority;
+    // a refreshing client sends the top games and item searches to Twitch even if they are cached,
+    // and puts the new results in the cache
+    private final boolean refreshCache;
+
+    public TwitchClient() {
+        this(TwitchRateLimiter.Priority.USER);
+    }
+
+    public TwitchClient(TwitchRateLimiter.Priority priority) {
+        this(priority, false);
+    }
+
+    public TwitchClient(TwitchRateLimiter.Priority priority, boolean refreshCache) {
+        this.priority = priority;
+        this.refreshCache = refreshCache;
+    }
 
     // Send HTTP requests to Twitch Backend based on the given URL,
-    // and return the body of the HTTP response returned from Twitch backend.
-    private String searchTwitch(String url) throws TwitchException {
-        CloseableHttpClient httpclient = HttpClients.createDefault();
+    // and return the "data" of the HTTP response returned from Twitch backend, parsed by the given parser.
+    // Every attempt takes a token from the rate limiter first. Throttled (429) and server errors (5xx)
+    // are retried up to MAX_ATTEMPTS times, other errors fail right away.
+    // Each attempt also goes through the circuit breaker and the bulkhead of the endpoint.
+    private <R> R searchTwitch(String url, TwitchEndpoint endpoint, DataParser<R> parser) throws TwitchException {
+        TwitchEndpointGuard guard = TwitchEndpointGuard.of(endpoint);
+        String endpointLabel = endpoint.name().toLowerCase(Locale.ROOT);
+        LatencyHistogram duration = REQUEST_DURATION.labels(endpointLabel);
+        String spanName = "twitch." + endpointLabel;
+        Counter bytes = RESPONSE_BYTES.labels(endpointLabel);
+        // status and body size of the current attempt, for its TwitchRequestEvent
+        int[] attemptStatus = new int[1];
+        long[] attemptBytes = new long[1];
+        // the shared client keeps a pool of keep-alive connections, so it must not be closed after each request
+        CloseableHttpClient httpclient = TwitchHttpClient.getInstance().getHttpClient();
 
         // Define the response handler to parse and return HTTP response body returned from Twitch
-        ResponseHandler<String> responseHandler = response -> {
+        ResponseHandler<R> responseHandler = response -> {
+            RATE_LIMITER.update(headerValue(response, "Ratelimit-Remaining"), headerValue(response, "Ratelimit-Reset"));
             int responseCode = response.getStatusLine().getStatusCode();
+            RESPONSES.labels(endpointLabel, Integer.toString(responseCode)).increment();
+            attemptStatus[0] = responseCode;
             if (responseCode != 200) {
                 System.out.println("Response status: " + response.getStatusLine().getReasonPhrase());
+                if (response.getEntity() != null && response.getEntity().getContentLength() > 0) {
+                    bytes.add(response.getEntity().getContentLength());
+                    attemptBytes[0] = response.getEntity().getContentLength();
+                }
+                // consume the body so that the connection can go back to the pool
+                EntityUtils.consume(response.getEntity());
+                if (responseCode == 429) {
+                    RATE_LIMITER.onThrottled(headerValue(response, "Ratelimit-Reset"));
+                    throw new RetryableException(responseCode);
+                }
+                if (responseCode >= 500) {
+                    throw new RetryableException(responseCode);
+                }
                 throw new TwitchException("Failed to get result from Twitch API");
             }
             HttpEntity entity = response.getEntity();
             if (entity == null) {
                 throw new TwitchException("Failed to get result from Twitch API");
             }
-            JSONObject obj = new JSONObject(EntityUtils.toString(entity));
-            return obj.getJSONArray("data").toString();
+            // parse the body while it is being read from the connection, counting the bytes on the way
+            // (the body is usually chunked, without Content-Length)
+            CountingInputStream in = new CountingInputStream(entity.getContent());
+            try {
+                return parser.parse(in);
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
+                throw new TwitchException("Failed to parse data from Twitch API");
+            } finally {
+                bytes.add(in.getByteCount());
+                attemptBytes[0] = in.getByteCount();
+                in.close();
+            }
         };
 
-        try {
-            // Define the HTTP request, TOKEN and CLIENT_ID are used for user authentication on Twitch backend
-            HttpGet request = new HttpGet(url);
-            request.setHeader("Authorization", TOKEN);
-            request.setHeader("Client-Id", CLIENT_ID);
-            return httpclient.execute(request, responseHandler);
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new TwitchException("Failed to get result from Twitch API");
-        } finally {
+        for (int attempt = 1; ; attempt++) {
+            // an open breaker fails right away, without taking a rate limit token
+            guard.acquire();
             try {
-                httpclient.close();
+                RATE_LIMITER.acquire(priority);
+                // the bulkhead place is only held while the request is sent, not while waiting for a token
+                guard.enterBulkhead();
+            } catch (TwitchException e) {
+                guard.cancel();
+                throw e;
+            }
+            long start = System.nanoTime();
+            attemptStatus[0] = 0;
+            attemptBytes[0] = 0;
+            TwitchRequestEvent event = TwitchRequestEvent.start();
+            // only server errors and network failures count against the endpoint
+            boolean healthy = true;
+            try {
+                // Define the HTTP request, TOKEN and CLIENT_ID are used for user authentication on Twitch backend
+                HttpGet request = new HttpGet(url);
+                request.setHeader("Authorization", TOKEN);
+                request.setHeader("Client-Id", CLIENT_ID);
+                return httpclient.execute(request, responseHandler);
+            } catch (RetryableException e) {
+                healthy = e.responseCode == 429;
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new TwitchException("Failed to get result from Twitch API");
+                }
             } catch (IOException e) {
+                healthy = false;
+                RESPONSES.labels(endpointLabel, "io_error").increment();
                 e.printStackTrace();
+                throw new TwitchException("Failed to get result from Twitch API");
+            } finally {
+                duration.recordSince(start);
+                RequestTiming.record(spanName, start);
+                event.finish(endpointLabel, url, attempt, attemptStatus[0], attemptBytes[0]);
+                guard.release(healthy, (System.nanoTime() - start) / 1000000);
             }
+            backOff(attempt);
+        }
+    }
+
+    // Full jitter: sleep a random time up to base * 2^(attempt - 1), so retries of concurrent requests spread out.
+    // After a 429 we also wait for the reset, unless that takes too long to be worth holding the thread.
+    private static void backOff(int attempt) throws TwitchException {
+        long maxDelayMs = Math.min(RETRY_MAX_DELAY_MS, RETRY_BASE_DELAY_MS << Math.min(attempt - 1, 20));
+        long delayMs = ThreadLocalRandom.current().nextLong(maxDelayMs + 1);
+        long resumeMs = RATE_LIMITER.millisUntilResumed();
+        if (resumeMs > RETRY_MAX_DELAY_MS) {
+            throw new TwitchException("Twitch rate limit reached, retry after " + resumeMs + " ms");
+        }
+        try {
+            Thread.sleep(Math.max(delayMs, resumeMs));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TwitchException("Interrupted while retrying Twitch request");
+        }
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    // A failed attempt that may succeed if we try again later
+    private static class RetryableException extends TwitchException {
+        private final int responseCode;
+
+        RetryableException(int responseCode) {
+            super("Twitch API answered " + responseCode);
+            this.responseCode = responseCode;
         }
     }
 
-    // Integrate search() and getGameList() together, returns the top x popular games from Twitch.
+    // Convert JSON format data returned from Twitch to an Arraylist of Game objects
+    private List<Game> requestGames(String url) throws TwitchException {
+        return searchTwitch(url, TwitchEndpoint.GAMES, TwitchResponseParser::readGames);
+    }
+
+    // Similar to requestGames, convert the JSON data returned from Twitch to a page of Item objects,
+    // with the cursor of the next page.
+    private TwitchPage<Item> requestItemPage(String url, TwitchEndpoint endpoint) throws TwitchException {
+        return searchTwitch(url, endpoint, TwitchResponseParser::readItemPage);
+    }
+
+    private interface DataParser<R> {
+        R parse(InputStream in) throws IOException;
+    }
+
+    // Integrate searchTwitch() and requestGames() together, returns the top x popular games from Twitch.
     public List<Game> topGames(int limit) throws TwitchException {
         // providing limit by GameServlet
         // 1. build game url
         // 2. send an HTTP request to Twitch by searchTwitch()
-        // 3. convert the response data in JSON format from Twitch to list of Java objects by getGameList()
-        if (limit <= 0) {
-            limit = DEFAULT_GAME_LIMIT;
+        // 3. convert the response data in JSON format from Twitch to list of Java objects by requestGames()
+        int gameLimit = limit <= 0 ? DEFAULT_GAME_LIMIT : limit;
+        if (refreshCache) {
+            return CACHE.refresh(topGamesKey(gameLimit), () -> loadTopGames(gameLimit));
         }
-        return getGameList(searchTwitch(buildGameURL(TOP_GAME_URL, "", limit)));
+        return CACHE.get(topGamesKey(gameLimit), () -> loadTopGames(gameLimit));
+    }
+
+    // Asynchronous version of topGames(), the request is sent by the shared Twitch executor.
+    // Results already in the cache are returned without switching threads.
+    public CompletableFuture<List<Game>> topGamesAsync(int limit) {
+        int gameLimit = limit <= 0 ? DEFAULT_GAME_LIMIT : limit;
+        if (refreshCache) {
+            return CACHE.refreshAsync(topGamesKey(gameLimit), () -> loadTopGames(gameLimit));
+        }
+        return CACHE.getAsync(topGamesKey(gameLimit), () -> loadTopGames(gameLimit));
+    }
+
+    private static TwitchCache.Key topGamesKey(int limit) {
+        return new TwitchCache.Key(TOP_GAME_URL, null, null, limit);
     }
 
-    // Integrate search() and getGameList() together, returns the dedicated game based on the game name.
+    private List<Game> loadTopGames(int limit) throws TwitchException {
+        return Collections.unmodifiableList(requestGames(buildGameURL(TOP_GAME_URL, "", limit)));
+    }
+
+    // Integrate searchTwitch() and requestGames() together, returns the dedicated game based on the game name.
     public Game searchGame(String gameName) throws TwitchException {
         // providing gameName by GameServlet
-        // 1. build game url
-        // 2. send an HTTP request to Twitch by searchTwitch()
-        // 3. convert the response data in JSON format from Twitch to list of Java objects by getGameList()
-        List<Game> gameList = getGameList(searchTwitch(buildGameURL(GAME_SEARCH_URL_TEMPLATE, gameName, 0)));
+        // the lookup is sent to Twitch together with the other lookups of the next few milliseconds
+        return join(searchGameAsync(gameName));
+    }
+
+    // Asynchronous version of searchGame(), the future completes with null if there is no such game.
+    public CompletableFuture<Game> searchGameAsync(String gameName) {
+        return lookupGame(new TwitchCache.Key(GAME_SEARCH_URL_TEMPLATE, gameName, null, 0),
+                NAME_BATCHERS.get(priority), gameName);
+    }
+
+    // Same as searchGame(), by the game id.
+    public CompletableFuture<Game> searchGameByIdAsync(String gameId) {
+        return lookupGame(new TwitchCache.Key(GAME_BY_ID_URL_TEMPLATE, gameId, null, 0),
+                ID_BATCHERS.get(priority), gameId);
+    }
+
+    // Return the games of the given names that Twitch knows, by name.
+    // The cached games are not asked again, the others are sent in batches of up to 100 names per request.
+    public Map<String, Game> searchGames(Collection<String> gameNames) throws TwitchException {
+        return join(searchGamesAsync(gameNames));
+    }
+
+    // Asynchronous version of searchGames()
+    public CompletableFuture<Map<String, Game>> searchGamesAsync(Collection<String> gameNames) {
+        Map<String, CompletableFuture<Game>> futures = new LinkedHashMap<>();
+        for (String gameName : gameNames) {
+            futures.putIfAbsent(gameName, searchGameAsync(gameName));
+        }
+        return collectGames(futures);
+    }
+
+    // Same as searchGames(), by the game ids.
+    public Map<String, Game> searchGamesByIds(Collection<String> gameIds) throws TwitchException {
+        Map<String, CompletableFuture<Game>> futures = new LinkedHashMap<>();
+        for (String gameId : gameIds) {
+            futures.putIfAbsent(gameId, searchGameByIdAsync(gameId));
+        }
+        return join(collectGames(futures));
+    }
+
+    // The cache keeps a list per key, empty when there is no such game, so unknown games are not asked again
+    private CompletableFuture<Game> lookupGame(TwitchCache.Key key, GameLookupBatcher batcher, String value) {
+        return CACHE.<List<Game>>getAsyncFuture(key, () -> batcher.lookup(value).thenApply(game ->
+                game == null ? Collections.<Game>emptyList() : Collections.singletonList(game)))
+                .thenApply(TwitchClient::firstGame);
+    }
+
+    // Wait for all the lookups without blocking, then keep the games that exist.
+    private static CompletableFuture<Map<String, Game>> collectGames(Map<String, CompletableFuture<Game>> futures) {
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, Game> games = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<Game>> entry : futures.entrySet()) {
+                Game game = entry.getValue().join();
+                if (game != null) {
+                    games.put(entry.getKey(), game);
+                }
+            }
+            return games;
+        });
+    }
+
+    private static Map<TwitchRateLimiter.Priority, GameLookupBatcher> gameBatchers(String param,
+                                                                                Function<Game, String> keyOf) {
+        Map<TwitchRateLimiter.Priority, GameLookupBatcher> batchers = new EnumMap<>(TwitchRateLimiter.Priority.class);
+        for (TwitchRateLimiter.Priority priority : TwitchRateLimiter.Priority.values()) {
+            TwitchClient client = new TwitchClient(priority);
+            batchers.put(priority, new GameLookupBatcher(values -> client.requestGameBatch(param, values), keyOf));
+        }
+        return batchers;
+    }
+
+    // Send one /games request with the given names or ids (param is "name" or "id"), at most 100 of them.
+    private List<Game> requestGameBatch(String param, List<String> values) throws TwitchException {
+        StringBuilder url = new StringBuilder(GAME_BATCH_URL);
+        for (String value : values) {
+            if (url.length() > GAME_BATCH_URL.length()) {
+                url.append('&');
+            }
+            try {
+                url.append(param).append('=').append(URLEncoder.encode(value, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                e.printStackTrace();
+            }
+        }
+        return requestGames(url.toString());
+    }
+
+    private static Game firstGame(List<Game> gameList) {
         if (gameList.size() != 0) {
             return gameList.get(0);
         }
@@ -116,54 +394,198 @@ public class TwitchClient {
         }
     }
 
-    // Convert JSON format data returned from Twitch to an Arraylist of Game objects
-    private List<Game> getGameList(String data) throws TwitchException {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            // ObjectMapper is a mapper tool provided by Jackson to convert between JSON strings and Java objects
-            // here it turns JSON strings into Java objects by readValue() method
-            // and return a list of game objects
-            return Arrays.asList(mapper.readValue(data, Game[].class));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            throw new TwitchException("Failed to parse game data from Twitch API");
-        }
+
+    // Return the streams, videos and clips of the game, like {"STREAM": [...], "VIDEO": [...], "CLIP": [...]}
+    // A complete result is cached as a whole, so repeated searches return the same read-only map.
+    public Map<String, List<Item>> searchItems(String gameId) throws TwitchException {
+        return join(searchItemsAsync(gameId));
     }
 
+    // Asynchronous version of searchItems(), no thread waits for the Twitch responses.
+    public CompletableFuture<Map<String, List<Item>>> searchItemsAsync(String gameId) {
+        TwitchCache.Key key = new TwitchCache.Key(TwitchCache.ALL_TYPES_ENDPOINT, gameId, null, DEFAULT_SEARCH_LIMIT);
+        Map<String, List<Item>> cached = CACHE.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
 
-    public Map<String, List<Item>> searchItems(String gameId) throws TwitchException {
-        Map<String, List<Item>> itemMap = new HashMap<>();
+        // send the requests of all the item types at the same time,
+        // so the latency is the slowest request instead of the sum of them
+        Map<ItemType, CompletableFuture<List<Item>>> futures = new EnumMap<>(ItemType.class);
         for (ItemType type : ItemType.values()) {
-            // for each itemType, do searchByType()
-            itemMap.put(type.toString(), searchByType(gameId, type, DEFAULT_SEARCH_LIMIT));
+            futures.put(type, searchByTypeAsync(gameId, type, DEFAULT_SEARCH_LIMIT));
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]));
+        return TwitchExecutor.settleWithin(all, SEARCH_DEADLINE_MS).thenApply(v -> collectItems(key, futures));
+    }
+
+    // Put together the item types that have finished by the deadline.
+    private Map<String, List<Item>> collectItems(TwitchCache.Key key,
+                                                 Map<ItemType, CompletableFuture<List<Item>>> futures) {
+        Map<String, List<Item>> itemMap = new HashMap<>();
+        int failures = 0;
+        for (Map.Entry<ItemType, CompletableFuture<List<Item>>> entry : futures.entrySet()) {
+            List<Item> items = resultNow(entry.getValue());
+            if (items == null) {
+                // return what we have for the other types instead of failing the whole search
+                failures++;
+                items = new ArrayList<>();
+            }
+            itemMap.put(entry.getKey().toString(), items);
+        }
+        if (failures == futures.size()) {
+            throw new TwitchException("Failed to get result from Twitch API");
+        }
+        itemMap = Collections.unmodifiableMap(itemMap);
+        if (failures == 0) {
+            // partial results are not cached, the next search tries the failed types again
+            CACHE.put(key, itemMap);
         }
         return itemMap;
     }
 
+    // Asynchronous version of searchByType(), the request is sent by the shared Twitch executor.
+    // Results already in the cache are returned without switching threads.
+    public CompletableFuture<List<Item>> searchByTypeAsync(String gameId, ItemType type, int limit) {
+        if (refreshCache) {
+            return CACHE.refreshAsync(itemKey(gameId, type, limit), () -> loadByType(gameId, type, limit));
+        }
+        return CACHE.getAsync(itemKey(gameId, type, limit), () -> loadByType(gameId, type, limit));
+    }
+
+    // Same as searchByTypeAsync(), but when Twitch is unavailable (the circuit breaker of the endpoint is open,
+    // or its bulkhead is full), return the last result we got for this search, even if it has expired.
+    public CompletableFuture<List<Item>> searchByTypeOrStaleAsync(String gameId, ItemType type, int limit) {
+        TwitchCache.Key key = itemKey(gameId, type, limit);
+        return searchByTypeAsync(gameId, type, limit).handle((items, error) -> {
+            if (error == null) {
+                return items;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            List<Item> stale = cause instanceof TwitchUnavailableException ? CACHE.getStale(key) : null;
+            if (stale == null) {
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            return stale;
+        });
+    }
+
+    // Return the result of a future whose deadline has passed.
+    // Return null if the request failed or is still running, so callers can keep the partial result.
+    // A running request is not cancelled: it is usually a cache load shared with other requests,
+    // which may still be waiting for it, and its result fills the cache when it arrives.
+    public static <T> T resultNow(CompletableFuture<T> future) {
+        if (!future.isDone()) {
+            System.out.println("Twitch request timed out");
+            return null;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            System.out.println("Twitch request failed: " + cause.getMessage());
+            return null;
+        }
+    }
+
+    // Wait for an asynchronous result, and throw the TwitchException it failed with.
+    private static <T> T join(CompletableFuture<T> future) throws TwitchException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TwitchException) {
+                throw (TwitchException) e.getCause();
+            }
+            throw new TwitchException("Failed to get result from Twitch API");
+        }
+    }
+
     public List<Item> searchByType(String gameId, ItemType type, int limit) throws TwitchException {
-        List<Item> items = Collections.emptyList();
+        if (refreshCache) {
+            return CACHE.refresh(itemKey(gameId, type, limit), () -> loadByType(gameId, type, limit));
+        }
+        return CACHE.get(itemKey(gameId, type, limit), () -> loadByType(gameId, type, limit));
+    }
+
+    private static TwitchCache.Key itemKey(String gameId, ItemType type, int limit) {
+        return new TwitchCache.Key("items", gameId, type, limit);
+    }
+
+    // Send the request of searchByType() to Twitch, the result is shared by the cache so it is read-only.
+    private List<Item> loadByType(String gameId, ItemType type, int limit) throws TwitchException {
+        List<Item> items;
+        if (limit <= MAX_PAGE_SIZE) {
+            items = searchPageByType(gameId, type, limit, null).getData();
+        } else {
+            // more than one page, fetched one after another on this thread: the loader already runs on a Twitch
+            // worker, it must not wait for a prefetch queued behind it on the same executor
+            items = new ArrayList<>();
+            TwitchPage<Item> page = searchPageByType(gameId, type, MAX_PAGE_SIZE, null);
+            items.addAll(page.getData());
+            while (page.hasNext() && items.size() < limit) {
+                int pageSize = Math.min(MAX_PAGE_SIZE, limit - items.size());
+                try {
+                    page = searchPageByType(gameId, type, pageSize, page.getCursor());
+                } catch (TwitchException e) {
+                    // keep the pages we already have rather than failing the whole search
+                    System.out.println("Failed to get page " + (items.size() / MAX_PAGE_SIZE + 1)
+                            + " of the items of game " + gameId + ", return " + items.size() + " items");
+                    break;
+                }
+                items.addAll(page.getData());
+            }
+            if (items.size() > limit) {
+                items = items.subList(0, limit);
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    // Lazily iterate over the items of the game, page by page, up to maxItems items.
+    // The next page is only requested when the caller starts reading the current one.
+    // These pages are not cached.
+    public TwitchPageIterator<Item> iterateByType(String gameId, ItemType type, int maxItems) {
+        int pageSize = Math.min(MAX_PAGE_SIZE, maxItems);
+        return new TwitchPageIterator<>(cursor -> searchPageByType(gameId, type, pageSize, cursor), maxItems);
+    }
+
+    // Same as iterateByType() as a Stream, e.g. streamByType(gameId, ItemType.CLIP, 500).filter(...).limit(50)
+    // Close the stream when it is not consumed until the end, to cancel the page fetched in advance.
+    public Stream<Item> streamByType(String gameId, ItemType type, int maxItems) {
+        TwitchPageIterator<Item> iterator = iterateByType(gameId, type, maxItems);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::close);
+    }
+
+    // Send one request for a page of the items of the game, cursor is null for the first page.
+    public TwitchPage<Item> searchPageByType(String gameId, ItemType type, int pageSize, String cursor)
+            throws TwitchException {
+        TwitchPage<Item> page;
         switch (type) {
             case STREAM:
-                items = searchStreams(gameId, limit);
+                page = searchStreams(gameId, pageSize, cursor);
                 break;
             case VIDEO:
-                items = searchVideos(gameId, limit);
+                page = searchVideos(gameId, pageSize, cursor);
                 break;
             case CLIP:
-                items = searchClips(gameId, limit);
+                page = searchClips(gameId, pageSize, cursor);
                 break;
+            default:
+                page = new TwitchPage<>(new ArrayList<>(), null);
         }
         // Update gameId for all items. GameId is used by recommendation function
-        for (Item item : items) {
+        for (Item item : page.getData()) {
             item.setGameId(gameId);
         }
-        return items;
+        return page;
     }
 
     // Returns the top x streams based on game ID.
-    private List<Item> searchStreams(String gameId, int limit) throws TwitchException {
-        List<Item> streams = getItemList(searchTwitch(buildSearchURL(STREAM_SEARCH_URL_TEMPLATE, gameId, limit)));
-        for (Item item : streams) {
+    private TwitchPage<Item> searchStreams(String gameId, int limit, String cursor) throws TwitchException {
+        TwitchPage<Item> streams = requestItemPage(
+                buildSearchURL(STREAM_SEARCH_URL_TEMPLATE, gameId, limit, cursor), TwitchEndpoint.STREAMS);
+        for (Item item : streams.getData()) {
             // TODO: encode broadcaster name
             // we need to assign types to the items returned from Twitch
             item.setType(ItemType.STREAM);
@@ -175,9 +597,10 @@ public class TwitchClient {
     }
 
     // Returns the top x clips based on game ID.
-    private List<Item> searchClips(String gameId, int limit) throws TwitchException {
-        List<Item> clips = getItemList(searchTwitch(buildSearchURL(CLIP_SEARCH_URL_TEMPLATE, gameId, limit)));
-        for (Item item : clips) {
+    private TwitchPage<Item> searchClips(String gameId, int limit, String cursor) throws TwitchException {
+        TwitchPage<Item> clips = requestItemPage(
+                buildSearchURL(CLIP_SEARCH_URL_TEMPLATE, gameId, limit, cursor), TwitchEndpoint.CLIPS);
+        for (Item item : clips.getData()) {
             // we need to assign types to the items returned from Twitch
             item.setType(ItemType.CLIP);
         }
@@ -185,9 +608,10 @@ public class TwitchClient {
     }
 
     // Returns the top x videos based on game ID.
-    private List<Item> searchVideos(String gameId, int limit) throws TwitchException {
-        List<Item> videos = getItemList(searchTwitch(buildSearchURL(VIDEO_SEARCH_URL_TEMPLATE, gameId, limit)));
-        for (Item item : videos) {
+    private TwitchPage<Item> searchVideos(String gameId, int limit, String cursor) throws TwitchException {
+        TwitchPage<Item> videos = requestItemPage(
+                buildSearchURL(VIDEO_SEARCH_URL_TEMPLATE, gameId, limit, cursor), TwitchEndpoint.VIDEOS);
+        for (Item item : videos.getData()) {
             // we need to assign types to the items returned from Twitch
             item.setType(ItemType.VIDEO);
         }
@@ -196,24 +620,16 @@ public class TwitchClient {
 
     // Similar to buildGameURL, build Search URL that will be used when calling Twitch API.
     // e.g. https://api.twitch.tv/helix/clips?game_id=12924.
-    private String buildSearchURL(String url, String gameId, int limit) {
+    // The cursor of the previous page is passed as after=..., to get the next page.
+    private String buildSearchURL(String url, String gameId, int limit, String cursor) {
         try {
             gameId = URLEncoder.encode(gameId, "UTF-8");
+            if (cursor != null) {
+                return String.format(url, gameId, limit) + "&after=" + URLEncoder.encode(cursor, "UTF-8");
+            }
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
         }
         return String.format(url, gameId, limit);
     }
-
-    // Similar to getGameList, convert the JSON data returned from Twitch to a list of Item objects.
-    private List<Item> getItemList(String data) throws TwitchException {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            // return a list of item objects
-            return Arrays.asList(mapper.readValue(data, Item[].class));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            throw new TwitchException("Failed to parse item data from Twitch API");
-        }
-    }
 }
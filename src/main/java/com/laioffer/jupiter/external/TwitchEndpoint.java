@@ -0,0 +1,6 @@
+package com.laioffer.jupiter.external;
+
+// The Helix endpoints we call, each one has its own circuit breaker and bulkhead (see TwitchEndpointGuard).
+public enum TwitchEndpoint {
+    GAMES, STREAMS, VIDEOS, CLIPS
+}
@@ -0,0 +1,102 @@
+package com.laioffer.jupiter.external;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Circuit breaker and bulkhead of one Twitch endpoint.
+// The bulkhead limits how many requests to the endpoint may run at the same time
+// (twitch.bulkhead.<endpoint>.maxConcurrent, e.g. twitch.bulkhead.clips.maxConcurrent),
+// so a slow endpoint cannot take all the Twitch workers and pooled connections from the others.
+public class TwitchEndpointGuard {
+    private static final int DEFAULT_MAX_CONCURRENT = Integer.getInteger("twitch.bulkhead.maxConcurrent", 8);
+    // how long a request may wait for a place in the bulkhead
+    private static final long MAX_WAIT_MS = Long.getLong("twitch.bulkhead.maxWaitMs", 100L);
+
+    private static final Map<TwitchEndpoint, TwitchEndpointGuard> GUARDS = new EnumMap<>(TwitchEndpoint.class);
+
+    static {
+        for (TwitchEndpoint endpoint : TwitchEndpoint.values()) {
+            GUARDS.put(endpoint, new TwitchEndpointGuard(endpoint));
+        }
+    }
+
+    private final TwitchEndpoint endpoint;
+    private final CircuitBreaker breaker;
+    private final int maxConcurrent;
+    private final Semaphore bulkhead;
+    private final LongAdder rejectedByBreaker = new LongAdder();
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+
+    private TwitchEndpointGuard(TwitchEndpoint endpoint) {
+        String name = endpoint.name().toLowerCase(Locale.ROOT);
+        this.endpoint = endpoint;
+        this.breaker = new CircuitBreaker(name);
+        this.maxConcurrent = Integer.getInteger("twitch.bulkhead." + name + ".maxConcurrent", DEFAULT_MAX_CONCURRENT);
+        this.bulkhead = new Semaphore(maxConcurrent);
+    }
+
+    public static TwitchEndpointGuard of(TwitchEndpoint endpoint) {
+        return GUARDS.get(endpoint);
+    }
+
+    // Check with the circuit breaker that a request may be sent, then enterBulkhead() and release(),
+    // or cancel(), must be called.
+    // The place in the bulkhead is taken separately, right before the request is sent: a request waiting for
+    // the rate limiter (a background one may wait seconds) must not hold it while the user requests are turned away.
+    public void acquire() throws TwitchUnavailableException {
+        if (!breaker.tryAcquire()) {
+            rejectedByBreaker.increment();
+            throw new TwitchUnavailableException("Circuit breaker of Twitch " + endpoint + " is open");
+        }
+    }
+
+    // Take a place for the request in the bulkhead, if it fails cancel() must be called.
+    public void enterBulkhead() throws TwitchUnavailableException {
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedByBulkhead.increment();
+            throw new TwitchUnavailableException("Too many concurrent requests to Twitch " + endpoint);
+        }
+    }
+
+    // The request has been sent, record whether the endpoint answered properly.
+    public void release(boolean success, long durationMs) {
+        bulkhead.release();
+        breaker.onResult(success, durationMs);
+    }
+
+    // The request was not sent after all, before it entered the bulkhead.
+    public void cancel() {
+        breaker.onCancel();
+    }
+
+    public TwitchEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - bulkhead.availablePermits();
+    }
+
+    public long getRejectedByBreaker() {
+        return rejectedByBreaker.sum();
+    }
+
+    public long getRejectedByBulkhead() {
+        return rejectedByBulkhead.sum();
+    }
+}
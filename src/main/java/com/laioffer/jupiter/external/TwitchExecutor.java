@@ -0,0 +1,109 @@
+package com.laioffer.jupiter.external;
+
+import com.laioffer.jupiter.metrics.RequestTiming;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Bounded thread pool used to send Twitch requests concurrently.
+// The size should be close to twitch.http.maxPerRoute, more threads would only wait for a pooled connection.
+// When both the threads and the queue are full, a task is rejected instead of running on the calling thread:
+// the caller may be the timer thread or a container thread, which must never block on Twitch.
+// supplyAsync() turns the rejection into a TwitchUnavailableException, so callers fall back like for an open breaker.
+public class TwitchExecutor {
+    private static final int THREADS = Integer.getInteger("twitch.executor.threads", 16);
+    private static final int QUEUE_SIZE = Integer.getInteger("twitch.executor.queueSize", 256);
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE),
+            new DaemonThreadFactory("twitch-worker-"),
+            new ThreadPoolExecutor.AbortPolicy()) {
+        // the tasks run with the RequestTiming span of the request that submitted them
+        @Override
+        public void execute(Runnable command) {
+            super.execute(RequestTiming.wrap(command));
+        }
+    };
+    // only fires the deadlines of the fan-outs and the batch windows, no Twitch request runs on it
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("twitch-timer-"));
+
+    static {
+        // idle threads are released when there is no traffic
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    public static ExecutorService get() {
+        return EXECUTOR;
+    }
+
+    // Run the loader on the executor. When the executor is saturated (or shut down) the future fails with
+    // TwitchUnavailableException right away, the loader never runs on the calling thread.
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> loader) {
+        try {
+            return CompletableFuture.supplyAsync(loader, EXECUTOR);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new TwitchUnavailableException("Too many pending requests to Twitch"));
+            return failed;
+        }
+    }
+
+    // Return a future that completes when the given future completes or when the timeout expires,
+    // whichever comes first. It never fails: the caller checks the original futures for their results.
+    // Unlike future.get(timeout), no thread is blocked while waiting.
+    public static CompletableFuture<Void> settleWithin(CompletableFuture<?> future, long timeoutMs) {
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        ScheduledFuture<?> timer = TIMER.schedule(() -> settled.complete(null), timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, error) -> {
+            timer.cancel(false);
+            settled.complete(null);
+        });
+        return settled;
+    }
+
+    // Run the task once after the delay, the task must be short, e.g. hand the real work to the executor.
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        return TIMER.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static void shutdown() {
+        TIMER.shutdownNow();
+        EXECUTOR.shutdown();
+        try {
+            if (!EXECUTOR.awaitTermination(5, TimeUnit.SECONDS)) {
+                EXECUTOR.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            EXECUTOR.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
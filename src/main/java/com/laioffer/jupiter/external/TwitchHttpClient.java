@@ -0,0 +1,99 @@
+package com.laioffer.jupiter.external;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Process-wide HTTP transport used by every TwitchClient.
+// Creating a new CloseableHttpClient for each request means a new TCP + TLS handshake for every Twitch call,
+// so instead we keep one client on top of a connection pool and reuse the keep-alive connections.
+// All the settings can be overridden by JVM system properties, e.g. -Dtwitch.http.maxPerRoute=50
+public class TwitchHttpClient {
+    private static final int MAX_TOTAL = Integer.getInteger("twitch.http.maxTotal", 100);
+    private static final int MAX_PER_ROUTE = Integer.getInteger("twitch.http.maxPerRoute", 20);
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("twitch.http.connectTimeoutMs", 2000);
+    private static final int SOCKET_TIMEOUT_MS = Integer.getInteger("twitch.http.socketTimeoutMs", 5000);
+    // how long a request may wait to lease a connection from the pool
+    private static final int REQUEST_TIMEOUT_MS = Integer.getInteger("twitch.http.requestTimeoutMs", 1000);
+    private static final long KEEP_ALIVE_MS = Long.getLong("twitch.http.keepAliveMs", 30000L);
+    private static final long IDLE_EVICT_MS = Long.getLong("twitch.http.idleEvictMs", 60000L);
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = Integer.getInteger("twitch.http.validateAfterMs", 2000);
+
+    private static final TwitchHttpClient INSTANCE = new TwitchHttpClient();
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    private TwitchHttpClient() {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                .setSocketTimeout(SOCKET_TIMEOUT_MS)
+                .setConnectionRequestTimeout(REQUEST_TIMEOUT_MS)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy())
+                // a background thread closes the expired and idle connections in the pool
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_EVICT_MS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public static TwitchHttpClient getInstance() {
+        return INSTANCE;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    // Total leased/available/pending connections of the pool, helps us size the pool under load.
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    // Release all the pooled connections, it is called when the webapp is shut down.
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Honor the "Keep-Alive: timeout=x" header returned by the server,
+    // and fall back to KEEP_ALIVE_MS if the server does not specify one.
+    private static ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000, KEEP_ALIVE_MS);
+                    } catch (NumberFormatException ignored) {
+                        // use the default value below
+                    }
+                }
+            }
+            return KEEP_ALIVE_MS;
+        };
+    }
+}
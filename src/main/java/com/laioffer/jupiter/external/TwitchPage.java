@@ -0,0 +1,27 @@
+package com.laioffer.jupiter.external;
+
+import java.util.List;
+
+// One page of a Helix response: the "data" array, and the cursor of the next page
+// (from "pagination": {"cursor": "..."}), which is null on the last page.
+public class TwitchPage<T> {
+    private final List<T> data;
+    private final String cursor;
+
+    public TwitchPage(List<T> data, String cursor) {
+        this.data = data;
+        this.cursor = cursor;
+    }
+
+    public List<T> getData() {
+        return data;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean hasNext() {
+        return cursor != null && !cursor.isEmpty();
+    }
+}
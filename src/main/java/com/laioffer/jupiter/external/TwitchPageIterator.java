@@ -0,0 +1,108 @@
+package com.laioffer.jupiter.external;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+// Lazy iterator over all the pages of a Helix query, at most maxItems elements.
+// The first page is requested on the first hasNext(). While the caller reads a page, the next page
+// is already requested in the background (one page ahead), so no page is fetched that is not about to be used.
+// Call close() when stopping early, so the page fetched ahead is cancelled.
+// The caller waits at most twitch.page.timeoutMs for a page fetched ahead. When the Twitch executor is saturated,
+// the next page is fetched by the caller instead, when it gets there.
+// The Twitch cache loaders already run on the executor, they must not use this iterator and wait for a task
+// queued behind them: they fetch their pages one after another (see TwitchClient.loadByType()).
+public class TwitchPageIterator<T> implements Iterator<T>, AutoCloseable {
+    private static final long PAGE_TIMEOUT_MS = Long.getLong("twitch.page.timeoutMs", 5000L);
+
+    // cursor -> page, the cursor is null for the first page
+    private final Function<String, TwitchPage<T>> pageLoader;
+    private final int maxItems;
+
+    private Iterator<T> current = Collections.emptyIterator();
+    private CompletableFuture<TwitchPage<T>> nextPage;
+    // cursor of the next page when it could not be fetched ahead
+    private String nextCursor;
+    private boolean started;
+    private int returned;
+
+    public TwitchPageIterator(Function<String, TwitchPage<T>> pageLoader, int maxItems) {
+        this.pageLoader = pageLoader;
+        this.maxItems = maxItems;
+    }
+
+    @Override
+    public boolean hasNext() throws TwitchException {
+        if (returned >= maxItems) {
+            close();
+            return false;
+        }
+        while (!current.hasNext()) {
+            TwitchPage<T> page;
+            if (!started) {
+                started = true;
+                page = pageLoader.apply(null);
+            } else if (nextPage != null) {
+                page = join(nextPage);
+                nextPage = null;
+            } else if (nextCursor != null) {
+                page = pageLoader.apply(nextCursor);
+                nextCursor = null;
+            } else {
+                return false;
+            }
+            if (page.hasNext() && returned + page.getData().size() < maxItems) {
+                // the caller is going to read this page, meanwhile fetch the following one
+                String cursor = page.getCursor();
+                nextPage = TwitchExecutor.supplyAsync(() -> pageLoader.apply(cursor));
+                if (nextPage.isCompletedExceptionally()) {
+                    // rejected by the saturated executor
+                    nextPage = null;
+                    nextCursor = cursor;
+                }
+            }
+            current = page.getData().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        returned++;
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws TwitchException {
+        try {
+            return future.get(PAGE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TwitchException) {
+                throw (TwitchException) e.getCause();
+            }
+            throw new TwitchException("Failed to get result from Twitch API");
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TwitchException("Timed out waiting for the next page from Twitch");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new TwitchException("Interrupted while waiting for the next page from Twitch");
+        }
+    }
+}
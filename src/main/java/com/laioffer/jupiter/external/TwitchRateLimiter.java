@@ -0,0 +1,133 @@
+package com.laioffer.jupiter.external;
+
+// Central meter for all the requests we send to Twitch.
+// Helix gives every client a bucket of points (800 per minute by default) and tells us in each response
+// how many are left (Ratelimit-Remaining) and when the bucket is full again (Ratelimit-Reset, epoch seconds).
+// We keep a local token bucket with the same refill rate, and correct it with those headers,
+// so we slow down before Twitch starts answering 429.
+// User-facing requests may use the whole bucket. Background requests (e.g. the refresher) leave a reserve
+// for the users, they wait a bit longer for a token, and are dropped (shed) when the bucket stays low.
+public class TwitchRateLimiter {
+    private static final int CAPACITY = Integer.getInteger("twitch.rateLimit.capacity", 800);
+    private static final long REFILL_PERIOD_MS = Long.getLong("twitch.rateLimit.refillPeriodMs", 60000L);
+    // tokens background requests must leave in the bucket for the user requests
+    private static final int BACKGROUND_RESERVE = Integer.getInteger("twitch.rateLimit.backgroundReserve",
+            CAPACITY / 5);
+    // how long a request may wait for a token before it fails
+    private static final long USER_MAX_WAIT_MS = Long.getLong("twitch.rateLimit.userMaxWaitMs", 1000L);
+    private static final long BACKGROUND_MAX_WAIT_MS = Long.getLong("twitch.rateLimit.backgroundMaxWaitMs", 5000L);
+
+    private static final TwitchRateLimiter INSTANCE = new TwitchRateLimiter();
+
+    public enum Priority {
+        USER, BACKGROUND
+    }
+
+    // all guarded by this
+    private double tokens = CAPACITY;
+    private long lastRefillNanos = System.nanoTime();
+    // set when Twitch says the bucket is empty, no request is sent before that time (epoch millis)
+    private long pausedUntilMillis = 0;
+
+    private TwitchRateLimiter() {
+    }
+
+    public static TwitchRateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    // Take a token for one request, waiting for the bucket to refill if needed.
+    // Throw TwitchException if no token is available within the max wait of the priority.
+    public void acquire(Priority priority) throws TwitchException {
+        double reserve = priority == Priority.BACKGROUND ? BACKGROUND_RESERVE : 0;
+        long maxWaitMs = priority == Priority.BACKGROUND ? BACKGROUND_MAX_WAIT_MS : USER_MAX_WAIT_MS;
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        while (true) {
+            long waitMs;
+            synchronized (this) {
+                refill();
+                long now = System.currentTimeMillis();
+                if (now >= pausedUntilMillis && tokens >= reserve + 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waitMs = Math.max(pausedUntilMillis - now, millisUntil(reserve + 1));
+            }
+            if (System.currentTimeMillis() + waitMs > deadline) {
+                // waiting would not help in time, drop the request instead of holding the thread
+                throw new TwitchException("Twitch rate limit reached, " + priority + " request dropped");
+            }
+            try {
+                Thread.sleep(Math.max(1, waitMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TwitchException("Interrupted while waiting for the Twitch rate limit");
+            }
+        }
+    }
+
+    // Correct the bucket with the Ratelimit-* headers of a response, the headers may be missing.
+    public synchronized void update(String remainingHeader, String resetHeader) {
+        Long remaining = parse(remainingHeader);
+        if (remaining == null) {
+            return;
+        }
+        refill();
+        // Twitch knows about the requests of our other instances, so trust it when it has fewer points than us
+        tokens = Math.min(tokens, remaining);
+        if (remaining == 0) {
+            pauseUntilReset(resetHeader);
+        }
+    }
+
+    // Twitch answered 429, so no request can succeed until the bucket is reset.
+    public synchronized void onThrottled(String resetHeader) {
+        tokens = 0;
+        lastRefillNanos = System.nanoTime();
+        pauseUntilReset(resetHeader);
+    }
+
+    // How long until the pause set by Twitch is over, 0 if we are not paused.
+    public synchronized long millisUntilResumed() {
+        return Math.max(0, pausedUntilMillis - System.currentTimeMillis());
+    }
+
+    public synchronized double availableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void pauseUntilReset(String resetHeader) {
+        Long resetEpochSec = parse(resetHeader);
+        long resumeAt = resetEpochSec == null
+                ? System.currentTimeMillis() + REFILL_PERIOD_MS / CAPACITY
+                : resetEpochSec * 1000L;
+        pausedUntilMillis = Math.max(pausedUntilMillis, resumeAt);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double refilled = (now - lastRefillNanos) / 1e6 * CAPACITY / REFILL_PERIOD_MS;
+        tokens = Math.min(CAPACITY, tokens + refilled);
+        lastRefillNanos = now;
+    }
+
+    // how long until the bucket holds the given number of tokens
+    private long millisUntil(double target) {
+        if (tokens >= target) {
+            return 0;
+        }
+        return (long) Math.ceil((target - tokens) * REFILL_PERIOD_MS / CAPACITY);
+    }
+
+    private static Long parse(String header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(header.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.laioffer.jupiter.external;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.laioffer.jupiter.entity.Game;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.json.JsonCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Parse the body of a Twitch Helix response, e.g. {"data": [{...}, {...}], "pagination": {...}}
+// The response stream is read only once: the parser skips straight to the "data" array
+// and binds each element directly into a Game/Item object, without building the whole body as a String
+// or as a JSONObject first. The readers come from the shared JsonCodec and are thread-safe.
+public class TwitchResponseParser {
+    private static final ObjectReader GAME_READER = JsonCodec.readerFor(Game.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private static final ObjectReader ITEM_READER = JsonCodec.readerFor(Item.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    public static List<Game> readGames(InputStream in) throws IOException {
+        return TwitchResponseParser.<Game>readPage(in, GAME_READER).getData();
+    }
+
+    public static List<Item> readItems(InputStream in) throws IOException {
+        return TwitchResponseParser.<Item>readPage(in, ITEM_READER).getData();
+    }
+
+    // Same as readItems(), and keep the cursor of the next page.
+    public static TwitchPage<Item> readItemPage(InputStream in) throws IOException {
+        return readPage(in, ITEM_READER);
+    }
+
+    private static <T> TwitchPage<T> readPage(InputStream in, ObjectReader reader) throws IOException {
+        List<T> data = new ArrayList<>();
+        String cursor = null;
+        try (JsonParser parser = JsonCodec.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Twitch response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    // read the elements one by one until the end of the array
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        data.add(reader.readValue(parser));
+                    }
+                } else if ("pagination".equals(field) && value == JsonToken.START_OBJECT) {
+                    cursor = readCursor(parser);
+                } else {
+                    // the other fields are not used
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new TwitchPage<>(data, cursor);
+    }
+
+    // read {"cursor": "..."}, the object is empty on the last page
+    private static String readCursor(JsonParser parser) throws IOException {
+        String cursor = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("cursor".equals(field) && value == JsonToken.VALUE_STRING) {
+                cursor = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return cursor;
+    }
+}
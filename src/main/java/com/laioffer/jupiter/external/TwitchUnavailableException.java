@@ -0,0 +1,9 @@
+package com.laioffer.jupiter.external;
+
+// Thrown without calling Twitch, when the circuit breaker of the endpoint is open or its bulkhead is full.
+// Callers may fall back to older cached data.
+public class TwitchUnavailableException extends TwitchException {
+    public TwitchUnavailableException(String errorMessage) {
+        super(errorMessage);
+    }
+}
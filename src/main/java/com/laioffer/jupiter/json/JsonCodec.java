@@ -0,0 +1,99 @@
+package com.laioffer.jupiter.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.laioffer.jupiter.entity.Game;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.entity.ItemType;
+import com.laioffer.jupiter.entity.User;
+import com.laioffer.jupiter.holders.FavoriteRequestBody;
+import com.laioffer.jupiter.holders.LoginRequestBody;
+import com.laioffer.jupiter.holders.LoginResponseBody;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One place for all the JSON I/O of the webapp.
+// Creating a new ObjectMapper for every call throws away its serializer/deserializer caches, so the builders of
+// Item, Game and User are introspected again on each request. Instead we share one ObjectMapper,
+// and keep a pre-built ObjectReader/ObjectWriter per type. They are immutable and thread-safe.
+public class JsonCodec {
+    // The servlets write to the response stream and the container closes it, so Jackson must not close it.
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    public static final TypeReference<Map<String, List<Item>>> ITEM_MAP_TYPE =
+            new TypeReference<Map<String, List<Item>>>() {
+            };
+    public static final TypeReference<List<Game>> GAME_LIST_TYPE = new TypeReference<List<Game>>() {
+    };
+
+    private static final ObjectWriter ITEM_MAP_WRITER = MAPPER.writerFor(ITEM_MAP_TYPE);
+    private static final ObjectWriter GAME_LIST_WRITER = MAPPER.writerFor(GAME_LIST_TYPE);
+
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{Item.class, Game.class, User.class,
+                FavoriteRequestBody.class, LoginRequestBody.class}) {
+            READERS.put(type, MAPPER.readerFor(type));
+        }
+        for (Class<?> type : new Class<?>[]{Item.class, Game.class, LoginResponseBody.class}) {
+            WRITERS.put(type, MAPPER.writerFor(type));
+        }
+    }
+
+    public static JsonFactory getFactory() {
+        return MAPPER.getFactory();
+    }
+
+    public static ObjectReader readerFor(Class<?> type) {
+        return READERS.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    public static ObjectWriter writerFor(Class<?> type) {
+        return WRITERS.computeIfAbsent(type, MAPPER::writerFor);
+    }
+
+    // Writer for the {"STREAM": [...], "VIDEO": [...], "CLIP": [...]} results of search and recommendation
+    public static ObjectWriter itemMapWriter() {
+        return ITEM_MAP_WRITER;
+    }
+
+    public static ObjectWriter gameListWriter() {
+        return GAME_LIST_WRITER;
+    }
+
+    // Build the serializers and deserializers of our types once at startup,
+    // so the first requests do not pay for the introspection.
+    public static void warmUp() {
+        try {
+            Item item = new Item.Builder().id("0").title("").url("").thumbnailUrl("")
+                    .broadcasterName("").gameId("0").type(ItemType.STREAM).build();
+            Map<String, List<Item>> itemMap = new HashMap<>();
+            itemMap.put(ItemType.STREAM.toString(), Collections.singletonList(item));
+            String itemMapJson = ITEM_MAP_WRITER.writeValueAsString(itemMap);
+            MAPPER.readerFor(ITEM_MAP_TYPE).readValue(itemMapJson);
+
+            Game game = new Game.Builder().id("0").name("").boxArtUrl("").build();
+            GAME_LIST_WRITER.writeValueAsString(Collections.singletonList(game));
+            readerFor(Game.class).readValue(writerFor(Game.class).writeValueAsString(game));
+            writerFor(LoginResponseBody.class).writeValueAsString(new LoginResponseBody("", ""));
+            readerFor(LoginRequestBody.class).readValue("{\"user_id\": \"\", \"password\": \"\"}");
+            String itemJson = writerFor(Item.class).writeValueAsString(item);
+            readerFor(FavoriteRequestBody.class).readValue("{\"favorite\": " + itemJson + "}");
+            readerFor(User.class).readValue("{\"user_id\": \"\", \"password\": \"\"}");
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+    }
+}
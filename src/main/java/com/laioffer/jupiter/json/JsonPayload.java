@@ -0,0 +1,53 @@
+package com.laioffer.jupiter.json;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+// A response body that is serialized once and sent many times, with its strong ETag.
+// The gzipped body is only built the first time a client asks for it.
+// The gzip representation has different bytes, so it gets its own ETag.
+public class JsonPayload {
+    private final byte[] body;
+    private final String etag;
+    private final String gzipEtag;
+    private volatile byte[] gzipBody;
+
+    public JsonPayload(byte[] body) {
+        this.body = body;
+        String hash = DigestUtils.md5Hex(body);
+        this.etag = "\"" + hash + "\"";
+        this.gzipEtag = "\"" + hash + "-gzip\"";
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getGzipEtag() {
+        return gzipEtag;
+    }
+
+    public byte[] getGzipBody() {
+        byte[] gzipped = gzipBody;
+        if (gzipped == null) {
+            // two threads may compress at the same time, both results are the same so that is fine
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            gzipped = out.toByteArray();
+            gzipBody = gzipped;
+        }
+        return gzipped;
+    }
+}
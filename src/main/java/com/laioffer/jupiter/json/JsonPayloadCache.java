@@ -0,0 +1,59 @@
+package com.laioffer.jupiter.json;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.io.UncheckedIOException;
+
+// Serialized bodies of the read-only values we send to many clients: the top games and default recommendation
+// snapshots, and the results kept in the Twitch cache.
+// The key is the value object itself, compared by identity (weakKeys), so a payload is reused as long as
+// the same snapshot or cache entry is served, and it is dropped once the value is replaced and garbage collected.
+// The values must never be modified after they are handed out, otherwise the cached body would be stale.
+public class JsonPayloadCache {
+    private static final long MAX_SIZE = Long.getLong("json.payloadCache.maxSize", 1000L);
+
+    private static final JsonPayloadCache INSTANCE = new JsonPayloadCache();
+
+    private final Cache<Object, JsonPayload> cache = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_SIZE)
+            .recordStats()
+            .build();
+
+    private JsonPayloadCache() {
+    }
+
+    public static JsonPayloadCache getInstance() {
+        return INSTANCE;
+    }
+
+    // Return the serialized value, serialize it with the writer on a miss.
+    public JsonPayload get(Object value, ObjectWriter writer) throws JsonProcessingException {
+        try {
+            return cache.get(value, v -> serialize(v, writer));
+        } catch (UncheckedIOException e) {
+            throw (JsonProcessingException) e.getCause();
+        }
+    }
+
+    // Hit/miss/eviction counters of the cache
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private static JsonPayload serialize(Object value, ObjectWriter writer) {
+        try {
+            return new JsonPayload(writer.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.laioffer.jupiter.metrics;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.laioffer.jupiter.db.MySQLConnectionPool;
+import com.laioffer.jupiter.db.StatementStats;
+import com.laioffer.jupiter.external.CircuitBreaker;
+import com.laioffer.jupiter.external.TwitchCache;
+import com.laioffer.jupiter.external.TwitchEndpoint;
+import com.laioffer.jupiter.external.TwitchEndpointGuard;
+import com.laioffer.jupiter.external.TwitchRateLimiter;
+import com.laioffer.jupiter.json.JsonPayloadCache;
+import com.laioffer.jupiter.recommendation.FavoriteProfileCache;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Exports the state the other classes already keep: circuit breakers and bulkheads of the Twitch endpoints,
+// the Twitch rate limiter, the caches, and the database connection pool.
+// Everything is read when /metrics is scraped, nothing is added to the request path.
+public class AppMetrics {
+    private static final String[] ENDPOINT = {"endpoint"};
+    private static final String[] CACHE = {"cache"};
+
+    private static boolean registered;
+
+    private AppMetrics() {
+    }
+
+    // Called once by AppContextListener when the webapp starts.
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.register(AppMetrics::collectTwitchEndpoints);
+        registry.register(AppMetrics::collectRateLimiter);
+        registry.register(AppMetrics::collectCaches);
+        registry.register(AppMetrics::collectDatabase);
+    }
+
+    private static void collectTwitchEndpoints(PrometheusWriter writer) throws IOException {
+        writer.header("jupiter_twitch_breaker_state", "gauge",
+                "State of the circuit breaker of the endpoint: 0 closed, 1 half open, 2 open");
+        for (TwitchEndpoint endpoint : TwitchEndpoint.values()) {
+            CircuitBreaker.State state = TwitchEndpointGuard.of(endpoint).getBreaker().getState();
+            int value = state == CircuitBreaker.State.CLOSED ? 0 : state == CircuitBreaker.State.HALF_OPEN ? 1 : 2;
+            writer.sample("jupiter_twitch_breaker_state", ENDPOINT, label(endpoint), value);
+        }
+        writer.header("jupiter_twitch_breaker_transitions_total", "counter",
+                "Number of state changes of the circuit breaker of the endpoint");
+        String[] transitionLabels = {"endpoint", "transition"};
+        for (TwitchEndpoint endpoint : TwitchEndpoint.values()) {
+            Map<String, Long> transitions = TwitchEndpointGuard.of(endpoint).getBreaker().getTransitions();
+            for (Map.Entry<String, Long> entry : transitions.entrySet()) {
+                writer.sample("jupiter_twitch_breaker_transitions_total", transitionLabels,
+                        Arrays.asList(label(endpoint).get(0), entry.getKey()), entry.getValue());
+            }
+        }
+        writer.header("jupiter_twitch_in_flight", "gauge", "Requests to the endpoint running now");
+        for (TwitchEndpoint endpoint : TwitchEndpoint.values()) {
+            writer.sample("jupiter_twitch_in_flight", ENDPOINT, label(endpoint),
+                    TwitchEndpointGuard.of(endpoint).getInFlight());
+        }
+        writer.header("jupiter_twitch_rejected_total", "counter",
+                "Requests to the endpoint rejected by the open breaker or the full bulkhead");
+        String[] rejectedLabels = {"endpoint", "reason"};
+        for (TwitchEndpoint endpoint : TwitchEndpoint.values()) {
+            TwitchEndpointGuard guard = TwitchEndpointGuard.of(endpoint);
+            String name = label(endpoint).get(0);
+            writer.sample("jupiter_twitch_rejected_total", rejectedLabels, Arrays.asList(name, "breaker"),
+                    guard.getRejectedByBreaker());
+            writer.sample("jupiter_twitch_rejected_total", rejectedLabels, Arrays.asList(name, "bulkhead"),
+                    guard.getRejectedByBulkhead());
+        }
+    }
+
+    private static void collectRateLimiter(PrometheusWriter writer) throws IOException {
+        TwitchRateLimiter limiter = TwitchRateLimiter.getInstance();
+        writer.header("jupiter_twitch_rate_limit_tokens", "gauge", "Twitch requests we may still send now");
+        writer.sample("jupiter_twitch_rate_limit_tokens", limiter.availableTokens());
+        writer.header("jupiter_twitch_rate_limit_paused_seconds", "gauge",
+                "Time until the requests resume after Twitch throttled us, 0 when they are not paused");
+        writer.sample("jupiter_twitch_rate_limit_paused_seconds", limiter.millisUntilResumed() / 1000.0);
+    }
+
+    private static void collectCaches(PrometheusWriter writer) throws IOException {
+        CacheStats twitch = TwitchCache.getInstance().getStats();
+        CacheStats profiles = FavoriteProfileCache.getInstance().getStats();
+        CacheStats payloads = JsonPayloadCache.getInstance().getStats();
+        writer.header("jupiter_cache_hits_total", "counter", "Cache lookups that found the value");
+        writer.sample("jupiter_cache_hits_total", CACHE, cache("twitch"), twitch.hitCount());
+        writer.sample("jupiter_cache_hits_total", CACHE, cache("favorite_profile"), profiles.hitCount());
+        writer.sample("jupiter_cache_hits_total", CACHE, cache("json_payload"), payloads.hitCount());
+        writer.header("jupiter_cache_misses_total", "counter", "Cache lookups that had to load the value");
+        writer.sample("jupiter_cache_misses_total", CACHE, cache("twitch"), twitch.missCount());
+        writer.sample("jupiter_cache_misses_total", CACHE, cache("favorite_profile"), profiles.missCount());
+        writer.sample("jupiter_cache_misses_total", CACHE, cache("json_payload"), payloads.missCount());
+        writer.header("jupiter_cache_evictions_total", "counter", "Entries evicted because of the size limit or TTL");
+        writer.sample("jupiter_cache_evictions_total", CACHE, cache("twitch"), twitch.evictionCount());
+        writer.sample("jupiter_cache_evictions_total", CACHE, cache("favorite_profile"), profiles.evictionCount());
+        writer.sample("jupiter_cache_evictions_total", CACHE, cache("json_payload"), payloads.evictionCount());
+        writer.header("jupiter_cache_size", "gauge", "Approximate number of entries in the cache");
+        writer.sample("jupiter_cache_size", CACHE, cache("twitch"), TwitchCache.getInstance().size());
+        writer.sample("jupiter_cache_size", CACHE, cache("favorite_profile"), FavoriteProfileCache.getInstance().size());
+        writer.sample("jupiter_cache_size", CACHE, cache("json_payload"), JsonPayloadCache.getInstance().size());
+    }
+
+    private static void collectDatabase(PrometheusWriter writer) throws IOException {
+        HikariPoolMXBean pool = MySQLConnectionPool.getPoolStats();
+        // no pool yet when the database could not be reached at startup
+        if (pool != null) {
+            String[] stateLabel = {"state"};
+            writer.header("jupiter_db_connections", "gauge", "Connections of the pool by state");
+            writer.sample("jupiter_db_connections", stateLabel, Collections.singletonList("active"),
+                    pool.getActiveConnections());
+            writer.sample("jupiter_db_connections", stateLabel, Collections.singletonList("idle"),
+                    pool.getIdleConnections());
+            writer.header("jupiter_db_connection_waiters", "gauge", "Threads waiting for a connection of the pool");
+            writer.sample("jupiter_db_connection_waiters", pool.getThreadsAwaitingConnection());
+        }
+        writer.header("jupiter_db_statement_prepares_total", "counter",
+                "Statements prepared by the database, i.e. not found in the statement cache");
+        writer.sample("jupiter_db_statement_prepares_total", StatementStats.getPrepares());
+        writer.header("jupiter_db_statement_cache_hits_total", "counter",
+                "Statements found in the statement cache of the connection");
+        writer.sample("jupiter_db_statement_cache_hits_total", StatementStats.getCacheHits());
+    }
+
+    private static List<String> label(TwitchEndpoint endpoint) {
+        return Collections.singletonList(endpoint.name().toLowerCase(Locale.ROOT));
+    }
+
+    private static List<String> cache(String name) {
+        return Collections.singletonList(name);
+    }
+}
@@ -0,0 +1,20 @@
+package com.laioffer.jupiter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// A monotonic count, LongAdder spreads the increments of concurrent threads over several cells.
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,135 @@
+package com.laioffer.jupiter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram with log-linear buckets, like HdrHistogram with 1 significant digit:
+// values are recorded in microseconds, 0-7 us have one bucket each, then every power of two is split
+// into 8 buckets, so a bucket is at most 12.5% wide whatever the latency. That is 8 + 8 * 34 buckets up to
+// 2^37 us (38 hours), larger values go to the last bucket.
+// record() is one atomic increment plus two LongAdder adds, no lock and no allocation.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void record(long duration, TimeUnit unit) {
+        long micros = Math.max(0, unit.toMicros(duration));
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    // record the time since System.nanoTime() returned startNanos
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sumMicros.sum();
+    }
+
+    // Number of recorded values <= micros, see Snapshot.countAtMost().
+    public long countAtMost(long micros) {
+        return snapshot().countAtMost(micros);
+    }
+
+    // The value (micros, the upper bound of its bucket) below which the given share of the values are,
+    // e.g. 0.99 for the p99. 0 if nothing is recorded.
+    public long valueAtQuantile(double quantile) {
+        return snapshot().valueAtQuantile(quantile);
+    }
+
+    // Copy of the bucket counts. Values are recorded while it is copied, so use one snapshot for all the numbers
+    // that must agree with each other, e.g. the cumulative buckets and the count of a Prometheus scrape.
+    public Snapshot snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return new Snapshot(snapshot);
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            this.total = total;
+        }
+
+        // the number of values in the snapshot
+        public long getCount() {
+            return total;
+        }
+
+        // Number of values <= micros. The bucket that contains micros is counted in proportion of the part
+        // of it that is <= micros, as if its values were spread evenly, so it is exact at the bucket bounds.
+        // It never decreases when micros grows, and it is at most getCount().
+        public long countAtMost(long micros) {
+            long result = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long upper = upperBound(i);
+                if (upper <= micros) {
+                    result += counts[i];
+                    continue;
+                }
+                long lower = i == 0 ? 0 : upperBound(i - 1) + 1;
+                if (lower <= micros) {
+                    result += Math.round(counts[i] * (double) (micros - lower + 1) / (upper - lower + 1));
+                }
+                break;
+            }
+            return result;
+        }
+
+        public long valueAtQuantile(double quantile) {
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    // the largest value of the bucket
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,60 @@
+package com.laioffer.jupiter.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// All the metrics of one name, one child per combination of label values,
+// e.g. jupiter_twitch_responses_total{endpoint="streams",status="200"}.
+// A child is created the first time its labels are used, after that labels() is a lock-free map lookup.
+// Keep the label values few (endpoint names, status codes), never ids or user input.
+public class MetricFamily<T> {
+    private final String name;
+    private final String help;
+    private final String type;
+    private final String[] labelNames;
+    private final Supplier<T> factory;
+    private final Map<List<String>, T> children = new ConcurrentHashMap<>();
+
+    MetricFamily(String name, String help, String type, String[] labelNames, Supplier<T> factory) {
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.labelNames = labelNames;
+        this.factory = factory;
+    }
+
+    public T labels(String... labelValues) {
+        if (labelValues.length != labelNames.length) {
+            throw new IllegalArgumentException(name + " has labels " + Arrays.toString(labelNames));
+        }
+        List<String> key = Arrays.asList(labelValues);
+        T child = children.get(key);
+        if (child == null) {
+            child = children.computeIfAbsent(key, k -> factory.get());
+        }
+        return child;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getHelp() {
+        return help;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    String[] getLabelNames() {
+        return labelNames;
+    }
+
+    Map<List<String>, T> getChildren() {
+        return children;
+    }
+}
@@ -0,0 +1,91 @@
+package com.laioffer.jupiter.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Process-wide registry of the metrics, exported by MetricsServlet at /metrics.
+// Counters and histograms are recorded by the code that does the work (servlets through MetricsFilter,
+// TwitchClient, MySQLConnection). The state that other classes already keep (breakers, caches, pools)
+// is read by collectors only when /metrics is scraped, so it costs nothing in between.
+// Durations are exported in seconds as Prometheus histograms, with the bucket bounds of BUCKETS_SECONDS.
+public class MetricsRegistry {
+    private static final double[] BUCKETS_SECONDS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    // Reads some state at scrape time and writes it as samples
+    public interface Collector {
+        void collect(PrometheusWriter writer) throws IOException;
+    }
+
+    private final List<MetricFamily<?>> families = new CopyOnWriteArrayList<>();
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public MetricFamily<Counter> counter(String name, String help, String... labelNames) {
+        return register(new MetricFamily<>(name, help, "counter", labelNames, Counter::new));
+    }
+
+    public MetricFamily<LatencyHistogram> histogram(String name, String help, String... labelNames) {
+        return register(new MetricFamily<>(name, help, "histogram", labelNames, LatencyHistogram::new));
+    }
+
+    public void register(Collector collector) {
+        collectors.add(collector);
+    }
+
+    private <T> MetricFamily<T> register(MetricFamily<T> family) {
+        for (MetricFamily<?> existing : families) {
+            if (existing.getName().equals(family.getName())) {
+                throw new IllegalArgumentException("Metric " + family.getName() + " is already registered");
+            }
+        }
+        families.add(family);
+        return family;
+    }
+
+    public void writeTo(Writer out) throws IOException {
+        PrometheusWriter writer = new PrometheusWriter(out);
+        for (MetricFamily<?> family : families) {
+            writer.header(family.getName(), family.getType(), family.getHelp());
+            for (Map.Entry<? extends List<String>, ?> child : family.getChildren().entrySet()) {
+                if (child.getValue() instanceof Counter) {
+                    writer.sample(family.getName(), family.getLabelNames(), child.getKey(),
+                            ((Counter) child.getValue()).get());
+                } else {
+                    writeHistogram(writer, family, child.getKey(), (LatencyHistogram) child.getValue());
+                }
+            }
+        }
+        for (Collector collector : collectors) {
+            collector.collect(writer);
+        }
+        out.flush();
+    }
+
+    private static void writeHistogram(PrometheusWriter writer, MetricFamily<?> family, List<String> labelValues,
+                                       LatencyHistogram histogram) throws IOException {
+        // all the buckets and the count come from one copy of the histogram, so the values recorded during the
+        // scrape cannot make a bucket larger than the next one or than +Inf (Prometheus requires them cumulative)
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        long count = snapshot.getCount();
+        for (double bound : BUCKETS_SECONDS) {
+            writer.sample(family.getName() + "_bucket", family.getLabelNames(), labelValues, "le",
+                    Double.toString(bound), snapshot.countAtMost((long) (bound * 1e6)));
+        }
+        writer.sample(family.getName() + "_bucket", family.getLabelNames(), labelValues, "le", "+Inf", count);
+        writer.sample(family.getName() + "_sum", family.getLabelNames(), labelValues,
+                histogram.getSumMicros() / 1e6);
+        writer.sample(family.getName() + "_count", family.getLabelNames(), labelValues, count);
+    }
+}
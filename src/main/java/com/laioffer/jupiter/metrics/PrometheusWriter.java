@@ -0,0 +1,83 @@
+package com.laioffer.jupiter.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+// Writes the Prometheus text exposition format (version 0.0.4):
+//   # HELP name help
+//   # TYPE name counter
+//   name{label="value"} 42
+public class PrometheusWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Writer out;
+
+    public PrometheusWriter(Writer out) {
+        this.out = out;
+    }
+
+    // the HELP and TYPE lines, once before the samples of a metric
+    public void header(String name, String type, String help) throws IOException {
+        out.write("# HELP ");
+        out.write(name);
+        out.write(' ');
+        out.write(help.replace("\\", "\\\\").replace("\n", "\\n"));
+        out.write("\n# TYPE ");
+        out.write(name);
+        out.write(' ');
+        out.write(type);
+        out.write('\n');
+    }
+
+    public void sample(String name, double value) throws IOException {
+        sample(name, new String[0], null, null, null, value);
+    }
+
+    public void sample(String name, String[] labelNames, List<String> labelValues, double value) throws IOException {
+        sample(name, labelNames, labelValues, null, null, value);
+    }
+
+    // a sample with one more label after the ones of its family, like the "le" of a histogram bucket
+    public void sample(String name, String[] labelNames, List<String> labelValues, String extraName,
+                       String extraValue, double value) throws IOException {
+        out.write(name);
+        boolean hasLabels = labelNames.length > 0 || extraName != null;
+        if (hasLabels) {
+            out.write('{');
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                label(labelNames[i], labelValues.get(i));
+            }
+            if (extraName != null) {
+                if (labelNames.length > 0) {
+                    out.write(',');
+                }
+                label(extraName, extraValue);
+            }
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(format(value));
+        out.write('\n');
+    }
+
+    private void label(String name, String value) throws IOException {
+        out.write(name);
+        out.write("=\"");
+        out.write(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+        out.write('"');
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
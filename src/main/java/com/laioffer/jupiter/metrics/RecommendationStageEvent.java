@@ -0,0 +1,41 @@
+package com.laioffer.jupiter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event of one stage of ItemRecommender, see TwitchRequestEvent:
+//   profile: read the favorite profile of the user, count = favorite items
+//   candidates: search Twitch for the candidate items, until all answered or the deadline, count = searches
+//   ranking: score and pick the recommended items, count = items recommended
+// The candidates stage is asynchronous, its event is committed by the thread that finishes it.
+@Name("jupiter.RecommendationStage")
+@Label("Recommendation Stage")
+@Category({"Jupiter", "Recommendation"})
+@Description("One stage of computing a recommendation")
+@StackTrace(false)
+public class RecommendationStageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Count")
+    int count;
+
+    public static RecommendationStageEvent start() {
+        RecommendationStageEvent event = new RecommendationStageEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(String stage, int count) {
+        end();
+        if (shouldCommit()) {
+            this.stage = stage;
+            this.count = count;
+            commit();
+        }
+    }
+}
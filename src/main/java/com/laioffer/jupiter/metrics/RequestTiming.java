@@ -0,0 +1,240 @@
+package com.laioffer.jupiter.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Where the time of one request goes: MetricsFilter starts a RequestTiming for every request, and the code it calls
+// records spans into it, e.g. "mysql.select_favorite_profile" or "twitch.streams".
+// The current span is kept in a ThreadLocal, so the code does not have to pass it around:
+//     RequestTiming.Span span = RequestTiming.startSpan("recommend.score");
+//     try {
+//         ...
+//     } finally {
+//         span.close();
+//     }
+// or, for a leaf that has already been timed, RequestTiming.record("twitch.streams", startNanos).
+// Outside of a request (background jobs, offline tools) there is no current span and both do nothing.
+// The work of a request also runs on the Twitch workers and in CompletableFuture callbacks,
+// wrap() carries the current span over to them (TwitchExecutor wraps every task it is given).
+// The spans are summed up by name in the Server-Timing response header, and a request slower than
+// servlet.slowRequestMs is printed with its whole span tree, for servlet.slowRequestSamplePercent of them.
+public class RequestTiming {
+    private static final long SLOW_REQUEST_MS = Long.getLong("servlet.slowRequestMs", 1000L);
+    private static final int SLOW_REQUEST_SAMPLE_PERCENT = Integer.getInteger("servlet.slowRequestSamplePercent", 100);
+    // a request that fans out to many Twitch calls could otherwise hold a lot of spans
+    private static final int MAX_SPANS = Integer.getInteger("servlet.timing.maxSpans", 256);
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final Span NOOP = new Span(null, null, "", 0);
+
+    private final String name;
+    private final Span root;
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger spanCount = new AtomicInteger();
+
+    private RequestTiming(String name) {
+        this.name = name;
+        this.root = new Span(this, null, "total", System.nanoTime());
+    }
+
+    // Start the timing of a request on the current thread, detach() must be called before the thread is reused.
+    public static RequestTiming start(String name) {
+        RequestTiming timing = new RequestTiming(name);
+        CURRENT.set(timing.root);
+        return timing;
+    }
+
+    // The thread goes back to the container, the request may still go on in other threads.
+    public void detach() {
+        CURRENT.remove();
+    }
+
+    // Start a child of the current span, it becomes the current span until it is closed.
+    public static Span startSpan(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null || !parent.timing.reserve()) {
+            return NOOP;
+        }
+        Span span = new Span(parent.timing, parent, name, System.nanoTime());
+        parent.timing.spans.add(span);
+        CURRENT.set(span);
+        return span;
+    }
+
+    // Add a finished child to the current span, from startNanos (System.nanoTime()) until now.
+    public static void record(String name, long startNanos) {
+        Span parent = CURRENT.get();
+        if (parent == null || !parent.timing.reserve()) {
+            return;
+        }
+        Span span = new Span(parent.timing, parent, name, startNanos);
+        span.endNanos = System.nanoTime();
+        parent.timing.spans.add(span);
+    }
+
+    // Run the task with the current span of the calling thread, whatever thread runs it.
+    public static Runnable wrap(Runnable task) {
+        Span captured = CURRENT.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = CURRENT.get();
+            CURRENT.set(captured);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    // Same for a CompletableFuture callback, e.g. future.thenApply(RequestTiming.wrap(v -> ...))
+    public static <T, R> Function<T, R> wrap(Function<T, R> function) {
+        Span captured = CURRENT.get();
+        if (captured == null) {
+            return function;
+        }
+        return value -> {
+            Span previous = CURRENT.get();
+            CURRENT.set(captured);
+            try {
+                return function.apply(value);
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    private static void restore(Span previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    private boolean reserve() {
+        return spanCount.incrementAndGet() <= MAX_SPANS;
+    }
+
+    public long getStartNanos() {
+        return root.startNanos;
+    }
+
+    // Server-Timing header value of the spans finished so far, summed up by name, e.g.
+    //     mysql.select_favorite_profile;dur=3.2, twitch.streams;desc="5 calls";dur=412.0, total;dur=450.3
+    // The spans that run at the same time are added up, so the sum can be larger than the total.
+    public String serverTiming() {
+        Map<String, double[]> byName = new LinkedHashMap<>();
+        for (Span span : sortedSpans()) {
+            if (span.endNanos != 0) {
+                double[] value = byName.computeIfAbsent(span.name, k -> new double[2]);
+                value[0] += span.getDurationMillis();
+                value[1]++;
+            }
+        }
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, double[]> entry : byName.entrySet()) {
+            header.append(entry.getKey());
+            if (entry.getValue()[1] > 1) {
+                header.append(";desc=\"").append((long) entry.getValue()[1]).append(" calls\"");
+            }
+            header.append(";dur=").append(millis(entry.getValue()[0])).append(", ");
+        }
+        header.append("total;dur=").append(millis((System.nanoTime() - root.startNanos) / 1e6));
+        return header.toString();
+    }
+
+    // End the request, and print the span tree if it was slow.
+    public void finish(int status) {
+        root.endNanos = System.nanoTime();
+        double totalMillis = root.getDurationMillis();
+        if (totalMillis < SLOW_REQUEST_MS || ThreadLocalRandom.current().nextInt(100) >= SLOW_REQUEST_SAMPLE_PERCENT) {
+            return;
+        }
+        StringBuilder log = new StringBuilder();
+        log.append("Slow request ").append(name).append(": ").append(millis(totalMillis)).append(" ms, status ")
+                .append(status);
+        if (spanCount.get() > MAX_SPANS) {
+            log.append(", ").append(spanCount.get() - MAX_SPANS).append(" spans dropped");
+        }
+        Map<Span, List<Span>> children = new HashMap<>();
+        for (Span span : sortedSpans()) {
+            children.computeIfAbsent(span.parent, k -> new ArrayList<>()).add(span);
+        }
+        appendChildren(log, children, root, 1);
+        System.out.println(log);
+    }
+
+    private void appendChildren(StringBuilder log, Map<Span, List<Span>> children, Span parent, int depth) {
+        List<Span> spans = children.get(parent);
+        if (spans == null) {
+            return;
+        }
+        for (Span span : spans) {
+            log.append('\n');
+            for (int i = 0; i < depth; i++) {
+                log.append("  ");
+            }
+            // the offset from the start of the request, then the duration, and the thread that ran it
+            log.append('+').append(millis((span.startNanos - root.startNanos) / 1e6)).append(" ms ")
+                    .append(span.name).append(' ')
+                    .append(span.endNanos == 0 ? "not finished" : millis(span.getDurationMillis()) + " ms")
+                    .append(" [").append(span.thread).append(']');
+            appendChildren(log, children, span, depth + 1);
+        }
+    }
+
+    private List<Span> sortedSpans() {
+        List<Span> sorted = new ArrayList<>(spans);
+        sorted.sort(Comparator.comparingLong(span -> span.startNanos));
+        return sorted;
+    }
+
+    private static String millis(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    // One timed step of the request. Closing it makes its parent the current span again.
+    public static class Span implements AutoCloseable {
+        private final RequestTiming timing;
+        private final Span parent;
+        private final String name;
+        private final String thread;
+        private final long startNanos;
+        // 0 while the span is running
+        private volatile long endNanos;
+
+        private Span(RequestTiming timing, Span parent, String name, long startNanos) {
+            this.timing = timing;
+            this.parent = parent;
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.startNanos = startNanos;
+        }
+
+        double getDurationMillis() {
+            return (endNanos - startNanos) / 1e6;
+        }
+
+        @Override
+        public void close() {
+            if (timing == null) {
+                return;
+            }
+            endNanos = System.nanoTime();
+            restore(parent);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.laioffer.jupiter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event of one MySQLConnection query, see TwitchRequestEvent.
+@Name("jupiter.SqlQuery")
+@Label("SQL Query")
+@Category({"Jupiter", "MySQL"})
+@Description("One query of MySQLConnection, including reading its result")
+@StackTrace(false)
+public class SqlQueryEvent extends Event {
+    @Label("Query")
+    @Description("Name of the statement, e.g. select_favorite_profile")
+    String query;
+
+    @Label("Rows")
+    @Description("Rows read, or changed by an update")
+    int rows;
+
+    @Label("Failed")
+    boolean failed;
+
+    // System.nanoTime() at the start, for the latency histogram, not part of the event
+    private transient long startNanos;
+
+    public static SqlQueryEvent start() {
+        SqlQueryEvent event = new SqlQueryEvent();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public void fail() {
+        failed = true;
+    }
+
+    public void finish(String query, int rows) {
+        end();
+        if (shouldCommit()) {
+            this.query = query;
+            this.rows = rows;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.laioffer.jupiter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event of one attempt of TwitchClient.searchTwitch(), so a slow Twitch call can be lined up with the GC pauses
+// and safepoints of the same moment in JDK Mission Control. Enabled by src/main/resources/jupiter.jfc.
+// When no recording is running, shouldCommit() is false and the fields are never filled in.
+@Name("jupiter.TwitchRequest")
+@Label("Twitch Request")
+@Category({"Jupiter", "Twitch"})
+@Description("One HTTP request to the Twitch Helix API")
+@StackTrace(false)
+public class TwitchRequestEvent extends Event {
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("URL Template")
+    @Description("The URL with the query values left out, e.g. /helix/streams?game_id={}&first={}")
+    String urlTemplate;
+
+    @Label("Status")
+    @Description("HTTP status, 0 when Twitch did not answer")
+    int status;
+
+    @Label("Response Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Attempt")
+    int attempt;
+
+    public static TwitchRequestEvent start() {
+        TwitchRequestEvent event = new TwitchRequestEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(String endpoint, String url, int attempt, int status, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.endpoint = endpoint;
+            this.urlTemplate = template(url);
+            this.attempt = attempt;
+            this.status = status;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+
+    // drop the host and the query values, so the events of the same search group together
+    private static String template(String url) {
+        String path = url.replaceFirst("^https?://[^/]+", "");
+        return path.replaceAll("=[^&]*", "={}");
+    }
+}
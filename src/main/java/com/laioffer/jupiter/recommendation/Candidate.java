@@ -0,0 +1,39 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entity.Item;
+
+// An item Twitch returned for one of the searched games, before it is scored.
+// gameRank is the position of its game in the searched games (0 = the game the user likes the most,
+// or the top game), and position is its position in the Twitch result of that game.
+public class Candidate {
+    private final Item item;
+    private final int gameRank;
+    private final int position;
+    private double score;
+
+    public Candidate(Item item, int gameRank, int position) {
+        this.item = item;
+        this.gameRank = gameRank;
+        this.position = position;
+    }
+
+    public Item getItem() {
+        return item;
+    }
+
+    public int getGameRank() {
+        return gameRank;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    void setScore(double score) {
+        this.score = score;
+    }
+}
@@ -0,0 +1,71 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entity.Item;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+// Weighted sum of three signals, each one in [0, 1]:
+// - how much the user likes the game of the item, or the item itself is similar to the favorites of the user,
+//   mapped to (0.5, 1]; without any of them, how high the game is in the searched games (e.g. the top games),
+//   mapped to (0, 0.25]. So an item of a favorite game always has a higher affinity than any other item,
+//   however old the favorite is
+// - how popular the item is, by its viewer/view count on a log scale
+// - how fresh the item is, its weight halves every FRESHNESS_HALF_LIFE_HOURS hours
+public class DefaultItemScorer implements ItemScorer {
+    private static final double AFFINITY_WEIGHT = 0.5;
+    private static final double POPULARITY_WEIGHT = 0.3;
+    private static final double FRESHNESS_WEIGHT = 0.2;
+    // 10^6 viewers or views gets the full popularity score
+    private static final double MAX_LOG_VIEWS = 6;
+    private static final double FRESHNESS_HALF_LIFE_HOURS = 72;
+    private static final double MILLIS_PER_HOUR = 3600 * 1000.0;
+    private static final double DIVERSITY_PENALTY = Double.parseDouble(
+            System.getProperty("recommendation.diversityPenalty", "0.1"));
+
+    @Override
+    public String getName() {
+        return "default";
+    }
+
+    @Override
+    public double score(Candidate candidate, RecommendationContext context) {
+        Item item = candidate.getItem();
+        double affinity = Math.max(context.gameAffinity(item.getType(), item.getGameId()),
+                context.itemSimilarity(item.getId()));
+        if (affinity > 0) {
+            affinity = 0.5 + 0.5 * affinity;
+        } else {
+            // no favorite of this game, follow the order of the searched games
+            affinity = 0.5 / (2 + candidate.getGameRank());
+        }
+        return AFFINITY_WEIGHT * affinity
+                + POPULARITY_WEIGHT * popularity(item)
+                + FRESHNESS_WEIGHT * freshness(item, context.getNow());
+    }
+
+    @Override
+    public double diversityPenalty() {
+        return DIVERSITY_PENALTY;
+    }
+
+    private static double popularity(Item item) {
+        Integer views = item.getViewerCount() != null ? item.getViewerCount() : item.getViewCount();
+        if (views == null || views <= 0) {
+            return 0;
+        }
+        return Math.min(1, Math.log10(1 + views) / MAX_LOG_VIEWS);
+    }
+
+    private static double freshness(Item item, long now) {
+        if (item.getCreatedAt() == null) {
+            return 0;
+        }
+        try {
+            long ageMillis = Math.max(0, now - Instant.parse(item.getCreatedAt()).toEpochMilli());
+            return Math.pow(0.5, ageMillis / MILLIS_PER_HOUR / FRESHNESS_HALF_LIFE_HOURS);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entity.Game;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.external.TwitchClient;
+import com.laioffer.jupiter.external.TwitchException;
+import com.laioffer.jupiter.external.TwitchRateLimiter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The recommendation for users who are not logged in, and the top games shown by GameServlet,
+// are the same for every visitor. Instead of computing them on each request, a background thread
+// refreshes them periodically and swaps in the new snapshot atomically, so serving them is just a memory read.
+// If Twitch is slow or failing, the refresh fails and we keep serving the last good snapshot.
+// The refresh does not read through TwitchCache, whose TTLs are longer than the interval: it always asks Twitch
+// and puts the new results in the cache, so the snapshots are at most recommendation.refreshIntervalSec old.
+public class DefaultRecommendationRefresher {
+    private static final long REFRESH_INTERVAL_SEC = Long.getLong("recommendation.refreshIntervalSec", 60L);
+
+    private static final DefaultRecommendationRefresher INSTANCE = new DefaultRecommendationRefresher();
+
+    private final AtomicReference<Map<String, List<Item>>> defaultItems = new AtomicReference<>();
+    private final AtomicReference<List<Game>> topGames = new AtomicReference<>();
+    private ScheduledExecutorService scheduler;
+
+    private DefaultRecommendationRefresher() {
+    }
+
+    public static DefaultRecommendationRefresher getInstance() {
+        return INSTANCE;
+    }
+
+    // Start refreshing in background, the first refresh runs immediately.
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "recommendation-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            // an exception escaping from the task would cancel all the following refreshes
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, REFRESH_INTERVAL_SEC, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // The last good default recommendation, or null if no refresh has succeeded yet.
+    public Map<String, List<Item>> getDefaultItems() {
+        return defaultItems.get();
+    }
+
+    // The last good top games list (with the default limit), or null if no refresh has succeeded yet.
+    public List<Game> getTopGames() {
+        return topGames.get();
+    }
+
+    // Recompute both snapshots, each one is only replaced if its refresh succeeds.
+    void refresh() {
+        // background requests give way to the user requests when we are close to the Twitch rate limit
+        TwitchClient client = new TwitchClient(TwitchRateLimiter.Priority.BACKGROUND, true);
+        try {
+            topGames.set(Collections.unmodifiableList(new ArrayList<>(client.topGames(0))));
+        } catch (TwitchException e) {
+            System.out.println("Failed to refresh top games, keep serving the last snapshot: " + e.getMessage());
+        }
+        try {
+            Map<String, List<Item>> previous = defaultItems.get();
+            Map<String, List<Item>> computed = new ItemRecommender(client).computeItemsByDefault();
+            Map<String, List<Item>> itemMap = new HashMap<>();
+            for (Map.Entry<String, List<Item>> entry : computed.entrySet()) {
+                List<Item> items = entry.getValue();
+                // the recommender returns partial results when some requests fail,
+                // keep the previous list of a type rather than replacing it with nothing
+                if (items.isEmpty() && previous != null && previous.containsKey(entry.getKey())) {
+                    items = previous.get(entry.getKey());
+                }
+                itemMap.put(entry.getKey(), Collections.unmodifiableList(items));
+            }
+            defaultItems.set(Collections.unmodifiableMap(itemMap));
+        } catch (RecommendationException e) {
+            System.out.println("Failed to refresh default recommendation, keep serving the last snapshot: "
+                    + e.getMessage());
+        }
+    }
+}
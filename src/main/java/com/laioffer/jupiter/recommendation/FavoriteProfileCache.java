@@ -0,0 +1,100 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.laioffer.jupiter.db.FavoriteWriteBehind;
+import com.laioffer.jupiter.db.MySQLConnection;
+import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.entity.FavoriteProfile;
+import com.laioffer.jupiter.entity.Item;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per-user cache of the favorite profile used by the recommendation.
+// A user's favorites change rarely, so the profile is read from MySQL on the first recommendation and
+// kept in memory. FavoriteServlet updates the cached profile on every add/remove (write-through),
+// so the cache never serves stale favorites and a personalized recommendation normally needs no DB access.
+// In write-behind mode, a profile read from MySQL also gets the changes which are still queued.
+// The cache is bounded by recommendation.profileCache.maxSize, and idle profiles expire after
+// recommendation.profileCache.expireMinutes.
+public class FavoriteProfileCache {
+    private static final long MAX_SIZE = Long.getLong("recommendation.profileCache.maxSize", 10000L);
+    private static final long EXPIRE_MINUTES = Long.getLong("recommendation.profileCache.expireMinutes", 30L);
+
+    private static final FavoriteProfileCache INSTANCE = new FavoriteProfileCache();
+
+    private final Cache<String, FavoriteProfile> cache = Caffeine.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .expireAfterAccess(EXPIRE_MINUTES, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+
+    private FavoriteProfileCache() {
+    }
+
+    public static FavoriteProfileCache getInstance() {
+        return INSTANCE;
+    }
+
+    // Return the cached profile of the user, or read it from the database on a miss.
+    public FavoriteProfile get(String userId) throws MySQLException {
+        return cache.get(userId, FavoriteProfileCache::load);
+    }
+
+    // Update the cached profile (if any) after the user adds a favorite item.
+    public void onFavorite(String userId, Item item) {
+        if (item.getType() == null) {
+            // we cannot update the game counts without the type, read it again next time
+            cache.invalidate(userId);
+            return;
+        }
+        cache.asMap().computeIfPresent(userId, (k, profile) -> profile.withFavorite(item));
+    }
+
+    // Update the cached profile (if any) after the user removes a favorite item.
+    public void onUnfavorite(String userId, Item item) {
+        if (item.getType() == null) {
+            cache.invalidate(userId);
+            return;
+        }
+        cache.asMap().computeIfPresent(userId, (k, profile) -> profile.withoutFavorite(item));
+    }
+
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    // Hit/miss/eviction counters of the cache
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private static FavoriteProfile load(String userId) {
+        FavoriteWriteBehind writeBehind = FavoriteWriteBehind.getInstance();
+        // take the queued changes before the read, see FavoriteWriteBehind.getPending().
+        // The changes queued during the load are applied by onFavorite() and onUnfavorite() when it is done.
+        List<FavoriteWriteBehind.Mutation> mutations = writeBehind.isEnabled()
+                ? writeBehind.getPending(userId) : Collections.emptyList();
+        MySQLConnection connection = null;
+        try {
+            connection = new MySQLConnection();
+            FavoriteProfile profile = connection.getFavoriteProfile(userId);
+            for (FavoriteWriteBehind.Mutation mutation : mutations) {
+                profile = mutation.isAdd()
+                        ? profile.withFavorite(mutation.getItem()) : profile.withoutFavorite(mutation.getItem());
+            }
+            return profile;
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+}
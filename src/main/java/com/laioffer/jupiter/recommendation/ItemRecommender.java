@@ -1,164 +1,352 @@
 package com.laioffer.jupiter.recommendation;
 
-import com.laioffer.jupiter.db.MySQLConnection;
 import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.entity.FavoriteProfile;
 import com.laioffer.jupiter.entity.Game;
 import com.laioffer.jupiter.entity.Item;
 import com.laioffer.jupiter.entity.ItemType;
 import com.laioffer.jupiter.external.TwitchClient;
-import com.laioffer.jupiter.external.TwitchException;
+import com.laioffer.jupiter.external.TwitchExecutor;
+import com.laioffer.jupiter.metrics.RecommendationStageEvent;
+import com.laioffer.jupiter.metrics.RequestTiming;
 
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ItemRecommender {
     // a few constants as default limit for recommendation
-    private static final int DEFAULT_GAME_LIMIT = 3;
-    private static final int DEFAULT_PER_GAME_RECOMMENDATION_LIMIT = 10;
+    // how many games we search for each type, and how many items of each game are scored.
+    // Every game costs one Helix search per type against the rate limit, so the defaults stay at 3 games x 10 items
+    private static final int DEFAULT_GAME_LIMIT = Integer.getInteger("recommendation.candidateGames", 3);
+    private static final int DEFAULT_PER_GAME_RECOMMENDATION_LIMIT =
+            Integer.getInteger("recommendation.candidatesPerGame", 10);
     private static final int DEFAULT_TOTAL_RECOMMENDATION_LIMIT = 20;
+    // collaborative candidates from the SimilarityIndex: games added to the favorite games of each type,
+    // and items similar to the favorite items
+    private static final int SIMILAR_GAME_LIMIT = Integer.getInteger("recommendation.similarGames", 2);
+    private static final int SIMILAR_ITEM_LIMIT = Integer.getInteger("recommendation.similarItems", 20);
+    // the best TOTAL_LIMIT * OVERSAMPLE candidates are kept for the diversity re-ranking
+    private static final int OVERSAMPLE = 3;
+    // how long we wait for all the Twitch requests of one recommendation
+    private static final long RECOMMENDATION_DEADLINE_MS = Long.getLong("recommendation.deadlineMs", 3000L);
+
+    private final TwitchClient client;
+
+    public ItemRecommender() {
+        this(new TwitchClient());
+    }
+
+    // the background refresher passes a refreshing client with a lower priority than the users,
+    // the benchmarks pass a client that answers from recorded responses
+    ItemRecommender(TwitchClient client) {
+        this.client = client;
+    }
 
     // If the user is successfully logged in, recommend by the favorite records,
     // Return a map of Item objects as the recommendation result. Keys of the map are [Stream, Video, Clip].
     // Each key is corresponding to a list of Items objects,
     // each item object is a recommended item based on the previous favorite records by the user.
     public Map<String, List<Item>> recommendItemsByUser(String userId) throws RecommendationException {
-        Map<String, List<Item>> recommendedItemMap = new HashMap<>();
-        Set<String> favoriteItemIds;
-        Map<String, List<String>> favoriteGameIds;
-        MySQLConnection connection = null;
-        // need to access to db to get favorite item ids and favorite game ids from user
+        return join(recommendItemsByUserAsync(userId));
+    }
+
+    // Asynchronous version of recommendItemsByUser(), no thread waits for the Twitch responses.
+    public CompletableFuture<Map<String, List<Item>>> recommendItemsByUserAsync(String userId) {
+        // the favorite history is cached in memory, so normally no DB access is needed here
+        FavoriteProfile profile;
+        RecommendationStageEvent profileEvent = RecommendationStageEvent.start();
+        RequestTiming.Span span = RequestTiming.startSpan("recommend.profile");
         try {
-            connection = new MySQLConnection();
-            favoriteItemIds = connection.getFavoriteItemIds(userId);
-            favoriteGameIds = connection.getFavoriteGameIds(favoriteItemIds);
+            profile = FavoriteProfileCache.getInstance().get(userId);
         } catch (MySQLException e) {
-            throw new RecommendationException("Failed to get user favorite history for recommendation");
+            return failed(new RecommendationException("Failed to get user favorite history for recommendation"));
         } finally {
-            connection.close();
+            span.close();
         }
+        profileEvent.finish("profile", profile.getFavoriteItemIds().size());
+        Set<String> favoriteItemIds = profile.getFavoriteItemIds();
+        Map<String, Map<String, Integer>> favoriteGameCounts = profile.getFavoriteGameCounts();
 
-        for (Map.Entry<String, List<String>> entry : favoriteGameIds.entrySet()) {
-            if (entry.getValue().size() == 0) {
-                // if in this item type, the user does not have favorite records
-                // then recommend by default twitch top games
-                TwitchClient client = new TwitchClient();
-                List<Game> topGames;
-                try {
-                    // fetch data from Twitch API
-                    topGames = client.topGames(DEFAULT_GAME_LIMIT);
-                } catch (TwitchException e) {
-                    throw new RecommendationException("Failed to get game data for recommendation");
+        // what the other users who favorite the same items also favorite, if the index has been built
+        SimilarityIndex index = SimilarityIndex.getInstance();
+        Map<String, Double> similarItems = index == null || favoriteItemIds.isEmpty()
+                ? Collections.emptyMap() : index.similarItems(favoriteItemIds, SIMILAR_ITEM_LIMIT);
+        Map<ItemType, List<Item>> similarItemsByType = loadSimilarItems(index, similarItems.keySet());
+        RecommendationContext context = new RecommendationContext(profile, similarItems, System.currentTimeMillis());
+        ItemScorer scorer = ItemScorers.forUser(userId);
+
+        // the top games are only fetched once for all the types without favorite records
+        boolean needTopGames = false;
+        for (Map<String, Integer> gameCounts : favoriteGameCounts.values()) {
+            needTopGames |= gameCounts.isEmpty();
+        }
+        CompletableFuture<List<String>> topGameIdsFuture = needTopGames
+                ? getTopGameIdsAsync() : CompletableFuture.completedFuture(Collections.emptyList());
+
+        // the callbacks may run on the thread of another request, which loaded the same top games
+        return topGameIdsFuture.thenCompose(RequestTiming.wrap(topGameIds -> {
+            // Decide which games to search for each item type
+            Map<ItemType, List<String>> gameIdsByType = new EnumMap<>(ItemType.class);
+            for (Map.Entry<String, Map<String, Integer>> entry : favoriteGameCounts.entrySet()) {
+                if (entry.getValue().size() == 0) {
+                    // if in this item type, the user does not have favorite records
+                    // then recommend by default twitch top games
+                    gameIdsByType.put(ItemType.valueOf(entry.getKey()), topGameIds);
+                } else {
+                    // recommend by user favorite history
+                    ItemType type = ItemType.valueOf(entry.getKey());
+                    List<String> gameIds = sortFavoriteGameIds(entry.getValue(), context.gameAffinities(type));
+                    if (index != null) {
+                        // plus the games that the users of the same games like
+                        for (String gameId : index.similarGames(gameIds, SIMILAR_GAME_LIMIT).keySet()) {
+                            gameIds.add(gameId);
+                        }
+                    }
+                    gameIdsByType.put(type, gameIds);
                 }
-                recommendedItemMap.put(entry.getKey(),
-                        recommendByTopGames(ItemType.valueOf(entry.getKey()), topGames));
-            } else {
-                // recommend by user favorite history
-                recommendedItemMap.put(entry.getKey(),
-                        recommendByFavoriteHistory(favoriteItemIds, entry.getValue(),
-                                ItemType.valueOf(entry.getKey())));
             }
-        }
-        return recommendedItemMap;
+            return recommendByGamesAsync(gameIdsByType, similarItemsByType, favoriteItemIds, context, scorer);
+        }));
     }
+
     // If the user is not logged in, recommend by the top games.
     // Return a map of Item objects as the recommendation result. Keys of the map are [Stream, Video, Clip].
     // Each key is corresponding to a list of Items objects,
     // each item object is a recommended item based on the top games currently on Twitch.
     public Map<String, List<Item>> recommendItemsByDefault() throws RecommendationException {
-        Map<String, List<Item>> recommendedItemMap = new HashMap<>();
-        TwitchClient client = new TwitchClient();
-        List<Game> topGames;
-        try {
-            topGames = client.topGames(DEFAULT_GAME_LIMIT);
-        } catch (TwitchException e) {
-            throw new RecommendationException("Failed to get game data for recommendation");
+        return join(recommendItemsByDefaultAsync());
+    }
+
+    // Asynchronous version of recommendItemsByDefault()
+    public CompletableFuture<Map<String, List<Item>>> recommendItemsByDefaultAsync() {
+        // normally the result is precomputed by the background refresher
+        Map<String, List<Item>> snapshot = DefaultRecommendationRefresher.getInstance().getDefaultItems();
+        if (snapshot != null) {
+            return CompletableFuture.completedFuture(snapshot);
         }
+        return computeItemsByDefaultAsync();
+    }
 
-        for (ItemType type : ItemType.values()) {
-            recommendedItemMap.put(type.toString(), recommendByTopGames(type, topGames));
+    // Compute the default recommendation from Twitch, it is called by the background refresher,
+    // or on demand when there is no snapshot yet.
+    Map<String, List<Item>> computeItemsByDefault() throws RecommendationException {
+        return join(computeItemsByDefaultAsync());
+    }
+
+    private CompletableFuture<Map<String, List<Item>>> computeItemsByDefaultAsync() {
+        return getTopGameIdsAsync().thenCompose(RequestTiming.wrap(topGameIds -> {
+            Map<ItemType, List<String>> gameIdsByType = new EnumMap<>(ItemType.class);
+            for (ItemType type : ItemType.values()) {
+                gameIdsByType.put(type, topGameIds);
+            }
+            return recommendByGamesAsync(gameIdsByType, Collections.emptyMap(), Collections.emptySet(),
+                    RecommendationContext.anonymous(), ItemScorers.getDefault());
+        }));
+    }
+
+    private CompletableFuture<List<String>> getTopGameIdsAsync() {
+        // fetch data from Twitch API
+        return client.topGamesAsync(DEFAULT_GAME_LIMIT).handle((topGames, error) -> {
+            if (error != null) {
+                throw new RecommendationException("Failed to get game data for recommendation");
+            }
+            List<String> topGameIds = new ArrayList<>();
+            for (Game game : topGames) {
+                topGameIds.add(game.getId());
+            }
+            return topGameIds;
+        });
+    }
+
+    // Search Twitch for every (game, type) pair at the same time, then score all the returned items,
+    // together with the extra items of each type, and keep the best ones of each type.
+    // Items in excludedItemIds are not recommended.
+    // A request that fails or misses the deadline is skipped, so we still return the partial result;
+    // only if every request fails we report the recommendation as failed.
+    // When the circuit breaker of an endpoint is open, the last cached result of the search is used instead.
+    private CompletableFuture<Map<String, List<Item>>> recommendByGamesAsync(
+            Map<ItemType, List<String>> gameIdsByType, Map<ItemType, List<Item>> extraItems,
+            Set<String> excludedItemIds, RecommendationContext context, ItemScorer scorer) {
+        RecommendationStageEvent candidatesEvent = RecommendationStageEvent.start();
+        Map<ItemType, Map<String, CompletableFuture<List<Item>>>> futures = new EnumMap<>(ItemType.class);
+        List<CompletableFuture<List<Item>>> allFutures = new ArrayList<>();
+        for (Map.Entry<ItemType, List<String>> entry : gameIdsByType.entrySet()) {
+            Map<String, CompletableFuture<List<Item>>> futuresByGame = new LinkedHashMap<>();
+            for (String gameId : entry.getValue()) {
+                CompletableFuture<List<Item>> future =
+                        client.searchByTypeOrStaleAsync(gameId, entry.getKey(), DEFAULT_PER_GAME_RECOMMENDATION_LIMIT);
+                futuresByGame.put(gameId, future);
+                allFutures.add(future);
+            }
+            futures.put(entry.getKey(), futuresByGame);
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(allFutures.toArray(new CompletableFuture<?>[0]));
+        return TwitchExecutor.settleWithin(all, RECOMMENDATION_DEADLINE_MS)
+                .thenApply(RequestTiming.wrap(v -> {
+                    candidatesEvent.finish("candidates", allFutures.size());
+                    RecommendationStageEvent rankingEvent = RecommendationStageEvent.start();
+                    Map<String, List<Item>> result;
+                    RequestTiming.Span span = RequestTiming.startSpan("recommend.score");
+                    try {
+                        result = collectRecommendation(futures, extraItems, excludedItemIds, context, scorer);
+                    } finally {
+                        span.close();
+                    }
+                    rankingEvent.finish("ranking", result.values().stream().mapToInt(List::size).sum());
+                    return result;
+                }));
+    }
+
+    // Build the result with the requests that have finished by the deadline.
+    private Map<String, List<Item>> collectRecommendation(
+            Map<ItemType, Map<String, CompletableFuture<List<Item>>>> futures,
+            Map<ItemType, List<Item>> extraItems, Set<String> excludedItemIds,
+            RecommendationContext context, ItemScorer scorer) {
+        Map<String, List<Item>> recommendedItemMap = new HashMap<>();
+        int requests = 0;
+        int failures = 0;
+        for (Map.Entry<ItemType, Map<String, CompletableFuture<List<Item>>>> entry : futures.entrySet()) {
+            List<Candidate> candidates = new ArrayList<>();
+            // the same item can be returned for two games, e.g. from the stale cache
+            Set<String> seenItemIds = new HashSet<>();
+            int gameRank = 0;
+            for (CompletableFuture<List<Item>> future : entry.getValue().values()) {
+                requests++;
+                List<Item> items = TwitchClient.resultNow(future);
+                if (items == null) {
+                    failures++;
+                } else {
+                    for (int i = 0; i < items.size(); i++) {
+                        Item item = items.get(i);
+                        // avoid recommending the items that have been in user's favorite list
+                        if (!excludedItemIds.contains(item.getId()) && seenItemIds.add(item.getId())) {
+                            candidates.add(new Candidate(item, gameRank, i));
+                        }
+                    }
+                }
+                gameRank++;
+            }
+            // the extra items rank after the searched games, the Twitch copy of an item wins as it is more complete
+            List<Item> extra = extraItems.getOrDefault(entry.getKey(), Collections.emptyList());
+            for (int i = 0; i < extra.size(); i++) {
+                Item item = extra.get(i);
+                if (!excludedItemIds.contains(item.getId()) && seenItemIds.add(item.getId())) {
+                    candidates.add(new Candidate(item, gameRank, i));
+                }
+            }
+            recommendedItemMap.put(entry.getKey().toString(), selectTopItems(candidates, context, scorer));
+        }
+        if (requests > 0 && failures == requests) {
+            throw new RecommendationException("Failed to get recommendation result");
         }
         return recommendedItemMap;
     }
-    // to handle recommendation when the user is not logged in.
-    // The recommendation is purely based-on top games returned by Twitch
-    // Return a list of Item objects for the given type. Types are one of [Stream, Video, Clip].
-    // Add items are related to the top games provided in the argument
-    private List<Item> recommendByTopGames(ItemType type, List<Game> topGames) throws RecommendationException {
-        List<Item> recommendedItems = new ArrayList<>();
-        TwitchClient client = new TwitchClient();
-
-        outerloop:
-        for (Game game : topGames) {
-            List<Item> items;
-            try {
-                items = client.searchByType(game.getId(), type, DEFAULT_PER_GAME_RECOMMENDATION_LIMIT);
-            } catch (TwitchException e) {
-                throw new RecommendationException("Failed to get recommendation result");
+
+    // Score the candidates and return the best DEFAULT_TOTAL_RECOMMENDATION_LIMIT of them.
+    // A bounded min-heap keeps the best candidates without sorting all of them, then the kept ones are picked
+    // greedily, each item of a broadcaster already picked losing the diversity penalty of the scorer,
+    // so one channel cannot fill the whole list.
+    static List<Item> selectTopItems(List<Candidate> candidates, RecommendationContext context,
+                                     ItemScorer scorer) {
+        int keep = DEFAULT_TOTAL_RECOMMENDATION_LIMIT * OVERSAMPLE;
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(keep + 1,
+                Comparator.comparingDouble(Candidate::getScore));
+        for (Candidate candidate : candidates) {
+            candidate.setScore(scorer.score(candidate, context));
+            heap.offer(candidate);
+            if (heap.size() > keep) {
+                // drop the worst one
+                heap.poll();
             }
-            for (Item item : items) {
-                if (recommendedItems.size() == DEFAULT_TOTAL_RECOMMENDATION_LIMIT) {
-                    break outerloop; // this can break the outerloop
+        }
+        List<Candidate> best = new ArrayList<>(heap);
+        best.sort(Comparator.comparingDouble(Candidate::getScore).reversed());
+
+        List<Item> result = new ArrayList<>();
+        Map<String, Integer> pickedByBroadcaster = new HashMap<>();
+        double penalty = scorer.diversityPenalty();
+        while (result.size() < DEFAULT_TOTAL_RECOMMENDATION_LIMIT && !best.isEmpty()) {
+            int bestIndex = 0;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < best.size(); i++) {
+                Candidate candidate = best.get(i);
+                double score = candidate.getScore()
+                        - penalty * pickedByBroadcaster.getOrDefault(broadcasterOf(candidate), 0);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestIndex = i;
                 }
-                recommendedItems.add(item);
+            }
+            Candidate picked = best.remove(bestIndex);
+            result.add(picked.getItem());
+            String broadcaster = broadcasterOf(picked);
+            if (broadcaster != null) {
+                pickedByBroadcaster.merge(broadcaster, 1, Integer::sum);
             }
         }
-        return recommendedItems;
+        return result;
     }
 
-    // Return a list of Item objects for the given type. Types are one of [Stream, Video, Clip].
-    // All items are related to the items previously favorite by the user.
-    // E.g., if a user favorite some videos about game "Just Chatting",
-    // then it will return some other videos about the same game.
-    private List<Item> recommendByFavoriteHistory(
-            Set<String> favoriteItemIds, List<String> favoriteGameIds, ItemType type) throws RecommendationException {
-        // Count the favorite game IDs from the database for the given user.
-        // E.g. if the favorite game ID list is ["1234", "2345", "2345", "3456"],
-        // the returned Map is {"1234": 1, "2345": 2, "3456": 1}
+    private static String broadcasterOf(Candidate candidate) {
+        return candidate.getItem().getBroadcasterName();
+    }
 
-        // same as for loop + getOrDefault
-        // new way starting from Java 8
-        // firstly group by the key (game id), then collect the value (count)
-        Map<String, Long> favoriteGameIdByCount = favoriteGameIds.parallelStream()
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    // Read the similar items from the index, the builder copies them from the items table, where they have been
+    // saved when a user added them as favorite. Streams are skipped, a saved stream is most likely over.
+    private static Map<ItemType, List<Item>> loadSimilarItems(SimilarityIndex index, Collection<String> itemIds) {
+        Map<ItemType, List<Item>> itemsByType = new EnumMap<>(ItemType.class);
+        for (String itemId : itemIds) {
+            Item item = index.getItem(itemId);
+            if (item != null && item.getType() != ItemType.STREAM) {
+                itemsByType.computeIfAbsent(item.getType(), type -> new ArrayList<>()).add(item);
+            }
+        }
+        return itemsByType;
+    }
+
+    // Wait for an asynchronous result, and throw the RecommendationException it failed with.
+    private static <T> T join(CompletableFuture<T> future) throws RecommendationException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RecommendationException) {
+                throw (RecommendationException) e.getCause();
+            }
+            throw new RecommendationException("Failed to get recommendation result");
+        }
+    }
 
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
 
-        // Sort the game id by count in descending order.
-        // E.g. if the input is {"1234": 1, "2345": 2, "3456": 1}, the returned Map is {"2345": 2, "1234": 1, "3456": 1}
-        // store entrySet to a List to invoke sort function provided in List
-        List<Map.Entry<String, Long>> sortedFavoriteGameIdListByCount = new ArrayList<>(
+    // Return the game ids the user likes the most, at most DEFAULT_GAME_LIMIT of them.
+    // The games are sorted by affinity (favorite count weighted by recency, see RecommendationContext),
+    // then by count.
+    private List<String> sortFavoriteGameIds(Map<String, Integer> favoriteGameIdByCount,
+                                             Map<String, Double> affinities) {
+        // The profile has counted the favorite game IDs for the given user.
+        // E.g. if the favorite game ID list is ["1234", "2345", "2345", "3456"],
+        // the count Map is {"1234": 1, "2345": 2, "3456": 1}
+        List<Map.Entry<String, Integer>> sortedFavoriteGameIdListByCount = new ArrayList<>(
                 favoriteGameIdByCount.entrySet());
-        sortedFavoriteGameIdListByCount.sort((Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) -> Long
-                .compare(e2.getValue(), e1.getValue()));
-        // See also: https://stackoverflow.com/questions/109383/sort-a-mapkey-value-by-values
+        sortedFavoriteGameIdListByCount.sort((Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) -> {
+            int result = Double.compare(affinities.getOrDefault(e2.getKey(), 0.0),
+                    affinities.getOrDefault(e1.getKey(), 0.0));
+            return result != 0 ? result : Integer.compare(e2.getValue(), e1.getValue());
+        });
 
         if (sortedFavoriteGameIdListByCount.size() > DEFAULT_GAME_LIMIT) {
             sortedFavoriteGameIdListByCount = sortedFavoriteGameIdListByCount.subList(0, DEFAULT_GAME_LIMIT);
         }
 
-        List<Item> recommendedItems = new ArrayList<>();
-        TwitchClient client = new TwitchClient();
-
-        // Search Twitch based on the favorite game IDs returned to the last step.
-        outerloop:
-        for (Map.Entry<String, Long> favoriteGame : sortedFavoriteGameIdListByCount) {
-            List<Item> items;
-            try {
-                items = client.searchByType(favoriteGame.getKey(), type, DEFAULT_PER_GAME_RECOMMENDATION_LIMIT);
-            } catch (TwitchException e) {
-                throw new RecommendationException("Failed to get recommendation result");
-            }
-
-            for (Item item : items) {
-                if (recommendedItems.size() == DEFAULT_TOTAL_RECOMMENDATION_LIMIT) {
-                    break outerloop;
-                }
-                // avoid recommending the items that have been in user's favorite list
-                if (!favoriteItemIds.contains(item.getId())) {
-                    recommendedItems.add(item);
-                }
-            }
+        List<String> sortedGameIds = new ArrayList<>();
+        for (Map.Entry<String, Integer> favoriteGame : sortedFavoriteGameIdListByCount) {
+            sortedGameIds.add(favoriteGame.getKey());
         }
-        return recommendedItems;
+        return sortedGameIds;
     }
 }
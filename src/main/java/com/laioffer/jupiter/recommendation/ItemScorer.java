@@ -0,0 +1,14 @@
+package com.laioffer.jupiter.recommendation;
+
+// Scores the candidates of a recommendation, the higher the better.
+// Implementations must be thread-safe, one instance is shared by all the requests.
+// See ItemScorers for how a scorer is chosen for a user.
+public interface ItemScorer {
+    String getName();
+
+    double score(Candidate candidate, RecommendationContext context);
+
+    // subtracted from the score of an item for each item of the same broadcaster already recommended,
+    // in the unit of score()
+    double diversityPenalty();
+}
@@ -0,0 +1,49 @@
+package com.laioffer.jupiter.recommendation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Chooses the scorer of a recommendation, so scorers can be compared (A/B test).
+// recommendation.scorer is the scorer of everyone (default: "default"). To try another scorer on a part of
+// the logged-in users, set recommendation.scorer.experiment to its name and
+// recommendation.scorer.experimentPercent to the share of the users (by a hash of the user id, so a user
+// always gets the same scorer).
+public class ItemScorers {
+    private static final Map<String, ItemScorer> SCORERS = new HashMap<>();
+
+    static {
+        register(new DefaultItemScorer());
+        register(new LegacyOrderScorer());
+    }
+
+    private static final ItemScorer BASE = byName(System.getProperty("recommendation.scorer", "default"));
+    private static final ItemScorer EXPERIMENT = byName(System.getProperty("recommendation.scorer.experiment",
+            BASE.getName()));
+    private static final int EXPERIMENT_PERCENT = Integer.getInteger("recommendation.scorer.experimentPercent", 0);
+
+    private static void register(ItemScorer scorer) {
+        SCORERS.put(scorer.getName(), scorer);
+    }
+
+    private static ItemScorer byName(String name) {
+        ItemScorer scorer = SCORERS.get(name);
+        if (scorer == null) {
+            System.out.println("Unknown recommendation scorer " + name + ", use the default one");
+            scorer = SCORERS.get("default");
+        }
+        return scorer;
+    }
+
+    // scorer of the anonymous users
+    public static ItemScorer getDefault() {
+        return BASE;
+    }
+
+    public static ItemScorer forUser(String userId) {
+        if (userId == null || EXPERIMENT_PERCENT <= 0) {
+            return BASE;
+        }
+        int bucket = (userId.hashCode() & Integer.MAX_VALUE) % 100;
+        return bucket < EXPERIMENT_PERCENT ? EXPERIMENT : BASE;
+    }
+}
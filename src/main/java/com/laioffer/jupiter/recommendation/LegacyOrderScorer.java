@@ -0,0 +1,21 @@
+package com.laioffer.jupiter.recommendation;
+
+// The old behavior: the items of the first game first, each game in the order Twitch returned them.
+// Kept as the control group of scorer experiments.
+public class LegacyOrderScorer implements ItemScorer {
+    @Override
+    public String getName() {
+        return "legacy";
+    }
+
+    @Override
+    public double score(Candidate candidate, RecommendationContext context) {
+        return -(candidate.getGameRank() * 1000.0 + candidate.getPosition());
+    }
+
+    // the old fill did not care about the broadcasters
+    @Override
+    public double diversityPenalty() {
+        return 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entity.FavoriteProfile;
+import com.laioffer.jupiter.entity.ItemType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+// What the scorers know about the user of one recommendation.
+// The affinity of a game is the number of favorite items of the game, each game weighted by how recently
+// the user added one of them (the weight halves every recommendation.affinityHalfLifeDays days),
+// normalized to [0, 1] within each item type. Without a profile (anonymous user) every affinity is 0.
+// The item similarity is how close an item is to the favorite items of the user according to the other users'
+// favorites (see SimilarityIndex), also in [0, 1].
+public class RecommendationContext {
+    private static final double HALF_LIFE_DAYS = Double.parseDouble(
+            System.getProperty("recommendation.affinityHalfLifeDays", "30"));
+    private static final double MILLIS_PER_DAY = 24 * 3600 * 1000.0;
+
+    private final long now;
+    private final Map<ItemType, Map<String, Double>> affinities = new EnumMap<>(ItemType.class);
+    private final Map<String, Double> itemSimilarities;
+
+    public RecommendationContext(FavoriteProfile profile, long now) {
+        this(profile, Collections.emptyMap(), now);
+    }
+
+    public RecommendationContext(FavoriteProfile profile, Map<String, Double> itemSimilarities, long now) {
+        this.now = now;
+        this.itemSimilarities = itemSimilarities;
+        for (ItemType type : ItemType.values()) {
+            affinities.put(type, profile == null
+                    ? Collections.emptyMap()
+                    : computeAffinities(profile.getFavoriteGameCounts().get(type.toString()),
+                    profile.getLastFavorTimes().get(type.toString())));
+        }
+    }
+
+    // context of an anonymous user
+    public static RecommendationContext anonymous() {
+        return new RecommendationContext(null, System.currentTimeMillis());
+    }
+
+    public long getNow() {
+        return now;
+    }
+
+    // in [0, 1], 1 for the game the user is the most into
+    public double gameAffinity(ItemType type, String gameId) {
+        Double affinity = affinities.get(type).get(gameId);
+        return affinity == null ? 0 : affinity;
+    }
+
+    public Map<String, Double> gameAffinities(ItemType type) {
+        return affinities.get(type);
+    }
+
+    // in [0, 1], 0 if the item is not similar to any favorite item of the user
+    public double itemSimilarity(String itemId) {
+        Double similarity = itemSimilarities.get(itemId);
+        return similarity == null ? 0 : similarity;
+    }
+
+    private Map<String, Double> computeAffinities(Map<String, Integer> counts, Map<String, Long> lastFavorTimes) {
+        Map<String, Double> result = new HashMap<>();
+        double max = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Long lastFavorTime = lastFavorTimes.get(entry.getKey());
+            double ageDays = lastFavorTime == null ? 0 : Math.max(0, now - lastFavorTime) / MILLIS_PER_DAY;
+            double affinity = entry.getValue() * Math.pow(0.5, ageDays / HALF_LIFE_DAYS);
+            result.put(entry.getKey(), affinity);
+            max = Math.max(max, affinity);
+        }
+        if (max > 0) {
+            for (Map.Entry<String, Double> entry : result.entrySet()) {
+                entry.setValue(entry.getValue() / max);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,275 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.entity.ItemType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Read-only item-to-item and game-to-game similarities computed offline by SimilarityIndexBuilder
+// from the favorite records ("users who favorite this also favorite that").
+// The file is memory-mapped instead of read into objects, so the index lives in the page cache and not in the
+// heap, and loading it is almost free. Each section of the file is a table of keys sorted by their UTF-8 bytes
+// and, for each key, its top-K neighbors as int indexes into the same table with a float score:
+//
+// header:  int MAGIC, int VERSION, long builtAt (epoch millis), int itemSectionOffset, int gameSectionOffset,
+//          int itemDataOffset
+// section: int keyCount, int neighborCount,
+//          int[keyCount + 1] keyOffsets, int[keyCount + 1] neighborStarts,
+//          int[neighborCount] neighborIds, float[neighborCount] neighborScores, byte[] keyBytes
+// item data: int itemCount, int[itemCount + 1] recordOffsets, byte[] records
+//
+// The item data has one record per key of the item section, in the same order, with the fields of the Item
+// (type, title, url, thumbnail url, broadcaster name, game id) as an int UTF-8 length (-1 for null) and the bytes.
+// An item deleted from the items table has an empty record. So the recommendation reads the similar items here
+// and never goes to the database for them.
+//
+// The index is optional: getInstance() returns null until a file exists at recommendation.similarity.path.
+// A new file written by the builder is picked up within recommendation.similarity.reloadCheckSec.
+public class SimilarityIndex {
+    static final int MAGIC = 0x4A53494D; // "JSIM"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+    // the fields of an item record
+    static final int ITEM_FIELDS = 6;
+
+    private static final long RELOAD_CHECK_MS = Long.getLong("recommendation.similarity.reloadCheckSec", 60L) * 1000;
+
+    private static volatile SimilarityIndex current;
+    private static volatile long nextCheckMillis;
+    // last modified time of the loaded file, guarded by SimilarityIndex.class
+    private static long loadedModifiedMillis;
+
+    private final long builtAt;
+    private final Section items;
+    private final Section games;
+    private final ByteBuffer buffer;
+    private final int itemDataPos;
+
+    private SimilarityIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a similarity index file of version " + VERSION);
+        }
+        builtAt = buffer.getLong(8);
+        items = new Section(buffer, buffer.getInt(16));
+        games = new Section(buffer, buffer.getInt(20));
+        this.buffer = buffer;
+        itemDataPos = buffer.getInt(24);
+    }
+
+    public static Path getPath() {
+        return Paths.get(System.getProperty("recommendation.similarity.path",
+                Paths.get(System.getProperty("java.io.tmpdir"), "jupiter-similarity.idx").toString()));
+    }
+
+    // Map the index file, it replaces the current index.
+    public static SimilarityIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SimilarityIndex(buffer);
+        }
+    }
+
+    // Load the index at startup, if there is one.
+    public static void load() {
+        nextCheckMillis = 0;
+        getInstance();
+    }
+
+    // The current index, or null if there is no index file (or it cannot be read).
+    public static SimilarityIndex getInstance() {
+        long now = System.currentTimeMillis();
+        if (now >= nextCheckMillis) {
+            reloadIfChanged(now);
+        }
+        return current;
+    }
+
+    private static synchronized void reloadIfChanged(long now) {
+        if (now < nextCheckMillis) {
+            // another thread has just checked
+            return;
+        }
+        nextCheckMillis = now + RELOAD_CHECK_MS;
+        Path path = getPath();
+        try {
+            if (!Files.exists(path)) {
+                return;
+            }
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (current != null && modified == loadedModifiedMillis) {
+                return;
+            }
+            current = open(path);
+            loadedModifiedMillis = modified;
+            System.out.println("Loaded similarity index " + path + ": " + current.items.keyCount + " items, "
+                    + current.games.keyCount + " games");
+        } catch (IOException e) {
+            // keep the previous index
+            System.out.println("Failed to load similarity index " + path + ": " + e.getMessage());
+        }
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    public int getItemCount() {
+        return items.keyCount;
+    }
+
+    public int getGameCount() {
+        return games.keyCount;
+    }
+
+    // The items most similar to the given ones (e.g. the favorite items of a user), the given items excluded.
+    // The scores are summed over the given items, then divided by the best one, so they are in (0, 1].
+    // The returned map is ordered by score, best first.
+    public Map<String, Double> similarItems(Collection<String> itemIds, int limit) {
+        return items.similar(itemIds, limit);
+    }
+
+    // Same as similarItems() for game ids.
+    public Map<String, Double> similarGames(Collection<String> gameIds, int limit) {
+        return games.similar(gameIds, limit);
+    }
+
+    // The saved item with the given id, null if it is not in the index or was not in the items table.
+    public Item getItem(String itemId) {
+        int index = items.find(itemId);
+        if (index < 0) {
+            return null;
+        }
+        int recordOffsetsPos = itemDataPos + 4;
+        int recordsPos = recordOffsetsPos + (buffer.getInt(itemDataPos) + 1) * 4;
+        int position = recordsPos + buffer.getInt(recordOffsetsPos + index * 4);
+        if (position == recordsPos + buffer.getInt(recordOffsetsPos + (index + 1) * 4)) {
+            return null;
+        }
+        String[] fields = new String[ITEM_FIELDS];
+        for (int i = 0; i < ITEM_FIELDS; i++) {
+            int length = buffer.getInt(position);
+            position += 4;
+            if (length >= 0) {
+                fields[i] = readString(buffer, position, length);
+                position += length;
+            }
+        }
+        return new Item.Builder().id(itemId).type(ItemType.valueOf(fields[0])).title(fields[1]).url(fields[2])
+                .thumbnailUrl(fields[3]).broadcasterName(fields[4]).gameId(fields[5]).build();
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // One table of keys and neighbors, all reads are absolute, so a section can be shared by all the threads.
+    private static class Section {
+        private final ByteBuffer buffer;
+        private final int keyCount;
+        private final int keyOffsetsPos;
+        private final int neighborStartsPos;
+        private final int neighborIdsPos;
+        private final int neighborScoresPos;
+        private final int keyBytesPos;
+
+        Section(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            keyCount = buffer.getInt(offset);
+            int neighborCount = buffer.getInt(offset + 4);
+            keyOffsetsPos = offset + 8;
+            neighborStartsPos = keyOffsetsPos + (keyCount + 1) * 4;
+            neighborIdsPos = neighborStartsPos + (keyCount + 1) * 4;
+            neighborScoresPos = neighborIdsPos + neighborCount * 4;
+            keyBytesPos = neighborScoresPos + neighborCount * 4;
+        }
+
+        Map<String, Double> similar(Collection<String> keys, int limit) {
+            Set<Integer> given = new HashSet<>();
+            for (String key : keys) {
+                int index = find(key);
+                if (index >= 0) {
+                    given.add(index);
+                }
+            }
+            Map<Integer, Double> scores = new HashMap<>();
+            for (int index : given) {
+                int end = buffer.getInt(neighborStartsPos + (index + 1) * 4);
+                for (int n = buffer.getInt(neighborStartsPos + index * 4); n < end; n++) {
+                    int neighbor = buffer.getInt(neighborIdsPos + n * 4);
+                    if (!given.contains(neighbor)) {
+                        scores.merge(neighbor, (double) buffer.getFloat(neighborScoresPos + n * 4), Double::sum);
+                    }
+                }
+            }
+            List<Map.Entry<Integer, Double>> sorted = new ArrayList<>(scores.entrySet());
+            sorted.sort((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()));
+            Map<String, Double> result = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Double> entry : sorted) {
+                if (result.size() == limit) {
+                    break;
+                }
+                result.put(key(entry.getKey()), entry.getValue() / sorted.get(0).getValue());
+            }
+            return result;
+        }
+
+        // binary search in the sorted keys, -1 if the key is not in the index
+        private int find(String key) {
+            byte[] target = key.getBytes(StandardCharsets.UTF_8);
+            int low = 0;
+            int high = keyCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int result = compareKey(mid, target);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        // compare the bytes of the key at the index with the target, as unsigned bytes like the builder sorts them
+        private int compareKey(int index, byte[] target) {
+            int start = keyBytesPos + buffer.getInt(keyOffsetsPos + index * 4);
+            int length = keyBytesPos + buffer.getInt(keyOffsetsPos + (index + 1) * 4) - start;
+            for (int i = 0; i < Math.min(length, target.length); i++) {
+                int result = Integer.compare(buffer.get(start + i) & 0xff, target[i] & 0xff);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(length, target.length);
+        }
+
+        private String key(int index) {
+            int start = buffer.getInt(keyOffsetsPos + index * 4);
+            int end = buffer.getInt(keyOffsetsPos + (index + 1) * 4);
+            return readString(buffer, keyBytesPos + start, end - start);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.db.MySQLConnection;
+import com.laioffer.jupiter.db.MySQLConnectionPool;
+import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.entity.Item;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Offline job that computes the SimilarityIndex from favorite_records.
+// Two items are similar when the same users favorite both of them, the similarity is the cosine of their
+// user sets: co-favorites / sqrt(favorites of item 1 * favorites of item 2). Games are compared the same way,
+// a user "favorites" a game when they favorite any item of it. Only the recommendation.similarity.topK best
+// neighbors of each item and game are kept. The saved metadata of the items is copied into the index as well,
+// so the servers can recommend the similar items without reading them from the items table.
+// Run it as a Java application (e.g. from cron) with the output path as argument, by default it writes
+// recommendation.similarity.path. The file is replaced atomically, so the running servers can reload it any time.
+public class SimilarityIndexBuilder {
+    private static final int TOP_K = Integer.getInteger("recommendation.similarity.topK", 20);
+    // the pairs of a user grow with the square of their favorites, so very active users are sampled
+    private static final int MAX_ITEMS_PER_USER = Integer.getInteger("recommendation.similarity.maxItemsPerUser", 500);
+    // ignore the pairs favorited together by fewer users, they are mostly noise
+    private static final int MIN_CO_COUNT = Integer.getInteger("recommendation.similarity.minCoCount", 1);
+
+    public static void main(String[] args) {
+        Path path = args.length > 0 ? Paths.get(args[0]) : SimilarityIndex.getPath();
+        try {
+            long start = System.currentTimeMillis();
+            build(path);
+            System.out.println("Similarity index written to " + path + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            MySQLConnectionPool.close();
+        }
+    }
+
+    // Read all the favorite records and write the index file.
+    public static void build(Path path) throws MySQLException, IOException {
+        CoOccurrence items = new CoOccurrence();
+        CoOccurrence games = new CoOccurrence();
+        Map<String, Item> savedItems = new HashMap<>();
+        MySQLConnection connection = new MySQLConnection();
+        try {
+            // the records are ordered by user, so each user is complete when the next one starts
+            String[] currentUser = {null};
+            Set<String> userItems = new LinkedHashSet<>();
+            Set<String> userGames = new LinkedHashSet<>();
+            connection.scanFavoriteRecords((userId, itemId, gameId) -> {
+                if (!userId.equals(currentUser[0])) {
+                    items.addUser(userItems);
+                    games.addUser(userGames);
+                    userItems.clear();
+                    userGames.clear();
+                    currentUser[0] = userId;
+                }
+                userItems.add(itemId);
+                if (gameId != null) {
+                    userGames.add(gameId);
+                }
+            });
+            items.addUser(userItems);
+            games.addUser(userGames);
+            for (Item item : connection.getItems(items.sortedKeys())) {
+                savedItems.put(item.getId(), item);
+            }
+        } finally {
+            connection.close();
+        }
+        write(path, items, games, savedItems);
+    }
+
+    static void write(Path path, CoOccurrence items, CoOccurrence games, Map<String, Item> savedItems)
+            throws IOException {
+        Path absolute = path.toAbsolutePath();
+        if (absolute.getParent() != null) {
+            Files.createDirectories(absolute.getParent());
+        }
+        byte[] itemSection = items.toSection();
+        byte[] gameSection = games.toSection();
+        byte[] itemData = toItemData(items.sortedKeys(), savedItems);
+        // write next to the target, then rename, so a reader never sees a half-written file
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SimilarityIndex.MAGIC);
+                out.writeInt(SimilarityIndex.VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(SimilarityIndex.HEADER_SIZE);
+                out.writeInt(SimilarityIndex.HEADER_SIZE + itemSection.length);
+                out.writeInt(SimilarityIndex.HEADER_SIZE + itemSection.length + gameSection.length);
+                out.write(itemSection);
+                out.write(gameSection);
+                out.write(itemData);
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Serialize the saved items in the item data layout of SimilarityIndex, one record per key of the item section.
+    private static byte[] toItemData(List<String> itemIds, Map<String, Item> savedItems) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(itemIds.size());
+        for (String itemId : itemIds) {
+            out.writeInt(recordsOut.size());
+            Item item = savedItems.get(itemId);
+            if (item == null) {
+                // empty record
+                continue;
+            }
+            String[] fields = {item.getType().toString(), item.getTitle(), item.getUrl(), item.getThumbnailUrl(),
+                    item.getBroadcasterName(), item.getGameId()};
+            for (String field : fields) {
+                if (field == null) {
+                    recordsOut.writeInt(-1);
+                } else {
+                    byte[] fieldBytes = field.getBytes(StandardCharsets.UTF_8);
+                    recordsOut.writeInt(fieldBytes.length);
+                    recordsOut.write(fieldBytes);
+                }
+            }
+        }
+        out.writeInt(recordsOut.size());
+        recordsOut.flush();
+        records.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Co-occurrence counts of the keys (item ids or game ids), keys are numbered in the order they are seen.
+    static class CoOccurrence {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        // number of users of each key
+        private final List<Integer> degrees = new ArrayList<>();
+        // for each key, other key -> number of users of both
+        private final List<Map<Integer, Integer>> counts = new ArrayList<>();
+
+        void addUser(Set<String> userKeys) {
+            int[] userIds = new int[Math.min(userKeys.size(), MAX_ITEMS_PER_USER)];
+            int size = 0;
+            for (String key : userKeys) {
+                if (size == userIds.length) {
+                    break;
+                }
+                userIds[size++] = idOf(key);
+            }
+            for (int i = 0; i < size; i++) {
+                degrees.set(userIds[i], degrees.get(userIds[i]) + 1);
+                for (int j = i + 1; j < size; j++) {
+                    counts.get(userIds[i]).merge(userIds[j], 1, Integer::sum);
+                    counts.get(userIds[j]).merge(userIds[i], 1, Integer::sum);
+                }
+            }
+        }
+
+        private int idOf(String key) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = keys.size();
+                ids.put(key, id);
+                keys.add(key);
+                degrees.add(0);
+                counts.add(new HashMap<>());
+            }
+            return id;
+        }
+
+        // The keys in the order of the section.
+        List<String> sortedKeys() {
+            List<String> sorted = new ArrayList<>();
+            for (int id : sortedOrder(keyBytes())) {
+                sorted.add(keys.get(id));
+            }
+            return sorted;
+        }
+
+        private byte[][] keyBytes() {
+            byte[][] keyBytes = new byte[keys.size()][];
+            for (int i = 0; i < keyBytes.length; i++) {
+                keyBytes[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+            return keyBytes;
+        }
+
+        // the reader binary-searches the keys by their UTF-8 bytes
+        private static Integer[] sortedOrder(byte[][] keyBytes) {
+            Integer[] order = new Integer[keyBytes.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> compareBytes(keyBytes[a], keyBytes[b]));
+            return order;
+        }
+
+        // Serialize the keys and their top-K neighbors in the section layout of SimilarityIndex.
+        byte[] toSection() throws IOException {
+            int keyCount = keys.size();
+            byte[][] keyBytes = keyBytes();
+            Integer[] order = sortedOrder(keyBytes);
+            int[] position = new int[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                position[order[i]] = i;
+            }
+
+            List<int[]> neighborIds = new ArrayList<>();
+            List<float[]> neighborScores = new ArrayList<>();
+            int neighborCount = 0;
+            for (int i = 0; i < keyCount; i++) {
+                int id = order[i];
+                List<Map.Entry<Integer, Integer>> pairs = new ArrayList<>(counts.get(id).entrySet());
+                double[] scores = new double[pairs.size()];
+                Integer[] byScore = new Integer[pairs.size()];
+                for (int p = 0; p < pairs.size(); p++) {
+                    Map.Entry<Integer, Integer> pair = pairs.get(p);
+                    scores[p] = pair.getValue() < MIN_CO_COUNT ? 0
+                            : pair.getValue() / Math.sqrt((double) degrees.get(id) * degrees.get(pair.getKey()));
+                    byScore[p] = p;
+                }
+                Arrays.sort(byScore, (a, b) -> Double.compare(scores[b], scores[a]));
+                int size = 0;
+                while (size < Math.min(TOP_K, byScore.length) && scores[byScore[size]] > 0) {
+                    size++;
+                }
+                int[] ids = new int[size];
+                float[] values = new float[size];
+                for (int n = 0; n < size; n++) {
+                    ids[n] = position[pairs.get(byScore[n]).getKey()];
+                    values[n] = (float) scores[byScore[n]];
+                }
+                neighborIds.add(ids);
+                neighborScores.add(values);
+                neighborCount += size;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(keyCount);
+            out.writeInt(neighborCount);
+            int keyOffset = 0;
+            for (int i = 0; i < keyCount; i++) {
+                out.writeInt(keyOffset);
+                keyOffset += keyBytes[order[i]].length;
+            }
+            out.writeInt(keyOffset);
+            int neighborStart = 0;
+            for (int[] ids : neighborIds) {
+                out.writeInt(neighborStart);
+                neighborStart += ids.length;
+            }
+            out.writeInt(neighborStart);
+            for (int[] ids : neighborIds) {
+                for (int id : ids) {
+                    out.writeInt(id);
+                }
+            }
+            for (float[] values : neighborScores) {
+                for (float value : values) {
+                    out.writeFloat(value);
+                }
+            }
+            for (int i = 0; i < keyCount; i++) {
+                out.write(keyBytes[order[i]]);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static int compareBytes(byte[] a, byte[] b) {
+            for (int i = 0; i < Math.min(a.length, b.length); i++) {
+                int result = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(a.length, b.length);
+        }
+    }
+}
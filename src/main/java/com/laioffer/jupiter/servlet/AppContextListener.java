@@ -0,0 +1,59 @@
+package com.laioffer.jupiter.servlet;
+
+import com.laioffer.jupiter.db.FavoriteWriteBehind;
+import com.laioffer.jupiter.db.MySQLConnectionPool;
+import com.laioffer.jupiter.db.MySQLDBUtil;
+import com.laioffer.jupiter.db.MySQLException;
+import com.laioffer.jupiter.db.MySQLMigrator;
+import com.laioffer.jupiter.external.TwitchExecutor;
+import com.laioffer.jupiter.external.TwitchHttpClient;
+import com.laioffer.jupiter.json.JsonCodec;
+import com.laioffer.jupiter.metrics.AppMetrics;
+import com.laioffer.jupiter.recommendation.DefaultRecommendationRefresher;
+import com.laioffer.jupiter.recommendation.SimilarityIndex;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.io.IOException;
+
+// @WebListener lets the container call us when the webapp is deployed and undeployed,
+// so the process-wide resources are created once and released properly.
+@WebListener
+public class AppContextListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // create the pooled HTTP transport before the first request comes in
+        TwitchHttpClient.getInstance();
+        // build the JSON serializers of our entities once, instead of on the first requests
+        JsonCodec.warmUp();
+        try {
+            MySQLConnectionPool.init();
+            // bring the schema up to date, set db.migrateOnStartup=false in config.properties to skip it
+            if (Boolean.parseBoolean(MySQLDBUtil.getProperty("db.migrateOnStartup", "true"))) {
+                MySQLMigrator.migrate();
+            }
+        } catch (MySQLException | IOException e) {
+            // the pool will be created again by the first request that needs the database
+            System.out.println("Failed to initialize the database at startup: " + e.getMessage());
+        }
+        // does nothing unless db.favorite.writeBehind is enabled
+        FavoriteWriteBehind.getInstance().start();
+        // map the collaborative index written by SimilarityIndexBuilder, if it exists
+        SimilarityIndex.load();
+        // export the breakers, caches and connection pool at /metrics
+        AppMetrics.register();
+        // precompute the recommendation for visitors who are not logged in
+        DefaultRecommendationRefresher.getInstance().start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        DefaultRecommendationRefresher.getInstance().stop();
+        TwitchExecutor.shutdown();
+        TwitchHttpClient.getInstance().close();
+        // write the queued favorite changes before the connection pool is closed
+        FavoriteWriteBehind.getInstance().stop();
+        MySQLConnectionPool.close();
+    }
+}
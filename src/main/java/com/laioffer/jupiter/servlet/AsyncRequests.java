@@ -0,0 +1,129 @@
+package com.laioffer.jupiter.servlet;
+
+import com.laioffer.jupiter.metrics.RequestTiming;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Servlet 3 async processing for the endpoints that wait on Twitch.
+// Instead of blocking a container thread until Twitch answers, the servlet starts the work, returns the thread
+// to Tomcat with startAsync(), and the response is written when the future completes.
+// So a slow Twitch API no longer starves the thread pool shared with /login and /favorite.
+// At most servlet.async.maxInFlight requests can wait at the same time, the others get 503 right away,
+// and a request that is not answered within servlet.async.timeoutMs gets 504.
+public class AsyncRequests {
+    private static final long TIMEOUT_MS = Long.getLong("servlet.async.timeoutMs", 5000L);
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("servlet.async.maxInFlight", 256);
+
+    private static final Semaphore IN_FLIGHT = new Semaphore(MAX_IN_FLIGHT);
+
+    // Write the result of the work to the response, e.g. ServletUtil::writeCachedItemMap
+    public interface ResultWriter<T> {
+        void write(HttpServletRequest request, HttpServletResponse response, T result) throws IOException;
+    }
+
+    public static <T> void handle(HttpServletRequest request, HttpServletResponse response,
+                                  Supplier<CompletableFuture<T>> work, ResultWriter<T> writer) throws IOException {
+        if (!IN_FLIGHT.tryAcquire()) {
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = work.get();
+        } catch (RuntimeException e) {
+            IN_FLIGHT.release();
+            throw e;
+        }
+        if (future.isDone()) {
+            // served from the cache, there is nothing to wait for
+            try {
+                respond(request, response, future, writer);
+            } finally {
+                IN_FLIGHT.release();
+            }
+            return;
+        }
+
+        AsyncContext context = request.startAsync(request, response);
+        context.setTimeout(TIMEOUT_MS);
+        // either the result or the timeout writes the response, never both
+        AtomicBoolean responded = new AtomicBoolean();
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                IN_FLIGHT.release();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (responded.compareAndSet(false, true)) {
+                    // only stop waiting: the future may be a Twitch cache load shared with other requests,
+                    // cancelling it would fail them too, and when it finishes the cache is filled for the next ones
+                    ((HttpServletResponse) event.getSuppliedResponse())
+                            .sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+                    event.getAsyncContext().complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                if (responded.compareAndSet(false, true)) {
+                    event.getAsyncContext().complete();
+                }
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        // wrapped here, on the request thread: the future may be completed by the work of another request
+        Runnable respondTask = RequestTiming.wrap(() -> {
+            if (!responded.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                respond(request, response, future, writer);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                context.complete();
+            }
+        });
+        future.whenComplete((result, error) -> {
+            if (responded.get()) {
+                return;
+            }
+            try {
+                // write the response on a container thread, not on the Twitch worker that completed the future
+                context.start(respondTask);
+            } catch (IllegalStateException e) {
+                // the request has timed out in the meantime
+            }
+        });
+    }
+
+    private static <T> void respond(HttpServletRequest request, HttpServletResponse response,
+                                    CompletableFuture<T> future, ResultWriter<T> writer) throws IOException {
+        T result;
+        try {
+            result = future.join();
+        } catch (RuntimeException e) {
+            // same as throwing ServletException from doGet() --> 500 internal server error
+            System.out.println("Request failed: " + (e.getCause() == null ? e : e.getCause()).getMessage());
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        writer.write(request, response, result);
+    }
+}
@@ -1,9 +1,11 @@
 package com.laioffer.jupiter.servlet;
 
+import com.laioffer.jupiter.db.FavoriteWriteBehind;
 import com.laioffer.jupiter.db.MySQLConnection;
 import com.laioffer.jupiter.db.MySQLException;
 import com.laioffer.jupiter.holders.FavoriteRequestBody;
 import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.recommendation.FavoriteProfileCache;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -19,6 +21,9 @@ import static com.laioffer.jupiter.servlet.ServletUtil.verifySession;
 
 @WebServlet(name = "FavoriteServlet", value = {"/favorite"})
 public class FavoriteServlet extends HttpServlet {
+    private static final FavoriteWriteBehind WRITE_BEHIND = FavoriteWriteBehind.getInstance();
+    private static final FavoriteProfileCache PROFILE_CACHE = FavoriteProfileCache.getInstance();
+
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         // Check if the session is still valid, which means the user has been logged in successfully.
         HttpSession session = request.getSession(false);
@@ -30,7 +35,11 @@ public class FavoriteServlet extends HttpServlet {
             // Read the favorite items from the database
             connection = new MySQLConnection();
             itemMap = connection.getFavoriteItems(userId);
-            ServletUtil.writeItem(response, itemMap);
+            // include the changes of this user which have not been written to the database yet
+            if (WRITE_BEHIND.isEnabled()) {
+                WRITE_BEHIND.applyPending(userId, itemMap);
+            }
+            ServletUtil.writeItemMap(request, response, itemMap);
         } catch (MySQLException e) {
             throw new ServletException(e);
         } finally {
@@ -49,11 +58,24 @@ public class FavoriteServlet extends HttpServlet {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
+        if (WRITE_BEHIND.isEnabled()) {
+            // queue the change, it is written to the database in the next batch
+            try {
+                WRITE_BEHIND.add(userId, body.getFavoriteItem());
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            PROFILE_CACHE.onFavorite(userId, body.getFavoriteItem());
+            return;
+        }
         MySQLConnection connection = null;
         try {
             // Save the favorite item to the database
             connection = new MySQLConnection();
             connection.setFavoriteItem(userId, body.getFavoriteItem());
+            // keep the cached favorite profile used by the recommendation up to date
+            PROFILE_CACHE.onFavorite(userId, body.getFavoriteItem());
         } catch (MySQLException e) {
             throw new ServletException(e);
         } finally {
@@ -73,11 +95,22 @@ public class FavoriteServlet extends HttpServlet {
             return;
         }
 
+        if (WRITE_BEHIND.isEnabled()) {
+            try {
+                WRITE_BEHIND.remove(userId, body.getFavoriteItem());
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            PROFILE_CACHE.onUnfavorite(userId, body.getFavoriteItem());
+            return;
+        }
         MySQLConnection connection = null;
         try {
             // Remove the favorite item to the database
             connection = new MySQLConnection();
             connection.unsetFavoriteItem(userId, body.getFavoriteItem().getId());
+            PROFILE_CACHE.onUnfavorite(userId, body.getFavoriteItem());
         } catch (MySQLException e) {
             throw new ServletException(e);
         } finally {
@@ -1,8 +1,8 @@
 package com.laioffer.jupiter.servlet;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.laioffer.jupiter.entity.Game;
 import com.laioffer.jupiter.external.TwitchClient;
-import com.laioffer.jupiter.external.TwitchException;
+import com.laioffer.jupiter.recommendation.DefaultRecommendationRefresher;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -10,10 +10,13 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 // @WebServlet annotation is to map the Servlet class and the url pattern
 // so that when the server receives HTTP request, it will map to the corresponding Servlet
-@WebServlet(name = "GameServlet", urlPatterns = {"/game"})
+@WebServlet(name = "GameServlet", urlPatterns = {"/game"}, asyncSupported = true)
 // use GameServlet to serve game queries
 // clients send the request either with a game name as the parameter, and we return the
 // details of that game, or without a game name, and we return the details of a list of top games
@@ -26,20 +29,28 @@ public class GameServlet extends HttpServlet {
         // Create a TwitchClient to send requests from our server to Twitch API
         TwitchClient client = new TwitchClient();
 
-        // Let the client know the returned data is in JSON format.
-        response.setContentType("application/json;charset=UTF-8");
-        try {
-            // Return the dedicated game information if gameName is provided in the request URL,
-            // otherwise return the top x games.
-            if (gameName != null) {
-                // ObjectMapper is a mapper tool provided by Jackson to convert between JSON strings and Java objects
-                // here it turns Java objects into JSON strings by writeValueAsString() method
-                response.getWriter().print(new ObjectMapper().writeValueAsString(client.searchGame(gameName)));
-            } else {
-                response.getWriter().print(new ObjectMapper().writeValueAsString(client.topGames(0)));
+        // Return the dedicated game information if gameName is provided in the request URL,
+        // otherwise return the top x games.
+        // Twitch is called asynchronously, so the container thread is not blocked while we wait for it.
+        String[] gameNames = request.getParameterValues("game_name");
+        if (gameNames != null && gameNames.length > 1) {
+            // several games at once, e.g. /game?game_name=Fortnite&game_name=Minecraft
+            // they are looked up in one Twitch request, and the games Twitch does not know are left out
+            AsyncRequests.handle(request, response, () -> client.searchGamesAsync(Arrays.asList(gameNames)),
+                    (req, resp, games) -> ServletUtil.writeGames(req, resp, new ArrayList<>(games.values())));
+        } else if (gameName != null) {
+            // ServletUtil turns Java objects into JSON with the shared Jackson writers,
+            // the game comes from the Twitch cache so its serialized body is cached too
+            AsyncRequests.handle(request, response, () -> client.searchGameAsync(gameName),
+                    ServletUtil::writeCachedItem);
+        } else {
+            // top games are refreshed in background, only ask Twitch if there is no snapshot yet
+            List<Game> topGames = DefaultRecommendationRefresher.getInstance().getTopGames();
+            if (topGames != null) {
+                ServletUtil.writeCachedGames(request, response, topGames);
+                return;
             }
-        } catch (TwitchException e) {
-            throw new ServletException(e); // --> 500 internal server error
+            AsyncRequests.handle(request, response, () -> client.topGamesAsync(0), ServletUtil::writeCachedGames);
         }
     }
 }
@@ -0,0 +1,77 @@
+package com.laioffer.jupiter.servlet;
+
+import com.laioffer.jupiter.metrics.Counter;
+import com.laioffer.jupiter.metrics.LatencyHistogram;
+import com.laioffer.jupiter.metrics.MetricFamily;
+import com.laioffer.jupiter.metrics.MetricsRegistry;
+import com.laioffer.jupiter.metrics.RequestTiming;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// Records the latency and the status of every request, by servlet name and method,
+// and starts the RequestTiming of the request, sent back in the Server-Timing header.
+// An async request (see AsyncRequests) is only finished when its AsyncContext completes,
+// so it is recorded by an AsyncListener instead of when doFilter() returns.
+@WebFilter(filterName = "MetricsFilter", urlPatterns = "/*", asyncSupported = true)
+public class MetricsFilter extends HttpFilter {
+    private static final MetricFamily<LatencyHistogram> DURATION = MetricsRegistry.getInstance().histogram(
+            "jupiter_http_request_duration_seconds", "Time to serve the request", "servlet", "method");
+    private static final MetricFamily<Counter> REQUESTS = MetricsRegistry.getInstance().counter(
+            "jupiter_http_requests_total", "Requests served, by response status", "servlet", "method", "status");
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        RequestTiming timing = RequestTiming.start(request.getMethod() + " " + request.getRequestURI());
+        ServerTimingResponse timedResponse = new ServerTimingResponse(response, timing);
+        boolean failed = true;
+        try {
+            chain.doFilter(request, timedResponse);
+            failed = false;
+        } finally {
+            timing.detach();
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        // also called after a timeout or an error, once the response is written
+                        record(request, timing, response.getStatus());
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                // a response without a body has not been committed yet
+                timedResponse.addServerTiming();
+                // an exception thrown to the container becomes a 500
+                record(request, timing, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus());
+            }
+        }
+    }
+
+    private static void record(HttpServletRequest request, RequestTiming timing, int status) {
+        String servlet = request.getHttpServletMapping().getServletName();
+        String method = request.getMethod();
+        DURATION.labels(servlet, method).recordSince(timing.getStartNanos());
+        REQUESTS.labels(servlet, method, Integer.toString(status)).increment();
+        timing.finish(status);
+    }
+}
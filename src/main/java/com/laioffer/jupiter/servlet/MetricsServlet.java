@@ -0,0 +1,22 @@
+package com.laioffer.jupiter.servlet;
+
+import com.laioffer.jupiter.metrics.MetricsRegistry;
+import com.laioffer.jupiter.metrics.PrometheusWriter;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// Exports all the metrics in the Prometheus text format, to be scraped by Prometheus or read with curl:
+//     curl http://localhost:8080/jupiter/metrics
+@WebServlet(name = "MetricsServlet", value = "/metrics")
+public class MetricsServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(PrometheusWriter.CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-store");
+        MetricsRegistry.getInstance().writeTo(response.getWriter());
+    }
+}
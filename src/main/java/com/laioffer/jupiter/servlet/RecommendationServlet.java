@@ -1,8 +1,6 @@
 package com.laioffer.jupiter.servlet;
 
-import com.laioffer.jupiter.entity.Item;
 import com.laioffer.jupiter.recommendation.ItemRecommender;
-import com.laioffer.jupiter.recommendation.RecommendationException;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -11,29 +9,24 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
 
-@WebServlet(name = "RecommendationServlet", value = "/recommendation")
+@WebServlet(name = "RecommendationServlet", value = "/recommendation", asyncSupported = true)
 public class RecommendationServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         HttpSession session = request.getSession(false);
         ItemRecommender itemRecommender = new ItemRecommender();
-        Map<String, List<Item>> itemMap;
 
         // If the user is successfully logged in, recommend by the favorite records, otherwise recommend by the top games.
-        try {
-            if (session == null) {
-                itemMap = itemRecommender.recommendItemsByDefault();
-            } else {
-                String userId = (String) request.getSession().getAttribute("user_id");
-                itemMap = itemRecommender.recommendItemsByUser(userId);
-            }
-        } catch (RecommendationException e) {
-            throw new ServletException(e);
+        // The response is written asynchronously, so the container thread is not blocked while we wait on Twitch.
+        if (session == null) {
+            // the default recommendation is the same shared snapshot for everyone, so its body is cached
+            AsyncRequests.handle(request, response, itemRecommender::recommendItemsByDefaultAsync,
+                    ServletUtil::writeCachedItemMap);
+        } else {
+            String userId = (String) session.getAttribute("user_id");
+            AsyncRequests.handle(request, response, () -> itemRecommender.recommendItemsByUserAsync(userId),
+                    ServletUtil::writeItemMap);
         }
-
-        ServletUtil.writeItem(response, itemMap);
     }
 }
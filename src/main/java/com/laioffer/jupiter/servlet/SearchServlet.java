@@ -1,7 +1,6 @@
 package com.laioffer.jupiter.servlet;
 
 import com.laioffer.jupiter.external.TwitchClient;
-import com.laioffer.jupiter.external.TwitchException;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -10,7 +9,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
-@WebServlet(name = "SearchServlet", value = "/search")
+@WebServlet(name = "SearchServlet", value = "/search", asyncSupported = true)
 public class SearchServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -22,10 +21,8 @@ public class SearchServlet extends HttpServlet {
         }
         // Create a TwitchClient to send requests from our server to Twitch API
         TwitchClient client = new TwitchClient();
-        try {
-            ServletUtil.writeItem(response, client.searchItems(gameId));
-        } catch (TwitchException e) {
-            throw new ServletException(e);
-        }
+        // complete results are cached by TwitchClient, so the same map (and ETag) is served until it expires
+        AsyncRequests.handle(request, response, () -> client.searchItemsAsync(gameId),
+                ServletUtil::writeCachedItemMap);
     }
 }
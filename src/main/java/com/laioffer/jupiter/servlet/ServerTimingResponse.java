@@ -0,0 +1,62 @@
+package com.laioffer.jupiter.servlet;
+
+import com.laioffer.jupiter.metrics.RequestTiming;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+// Adds the Server-Timing header of the request just before the body is written, as the headers cannot change
+// once the response is committed. So it has the spans finished by then, e.g. the Twitch calls and the
+// serialization of a cached body, but not a body that is serialized while it is streamed to the client.
+// It can be turned off with -Dservlet.serverTiming=false, as the header shows our internals to every client.
+class ServerTimingResponse extends HttpServletResponseWrapper {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("servlet.serverTiming", "true"));
+
+    private final RequestTiming timing;
+    private volatile boolean added;
+
+    ServerTimingResponse(HttpServletResponse response, RequestTiming timing) {
+        super(response);
+        this.timing = timing;
+    }
+
+    void addServerTiming() {
+        if (ENABLED && !added && !isCommitted()) {
+            added = true;
+            setHeader("Server-Timing", timing.serverTiming());
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        addServerTiming();
+        return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        addServerTiming();
+        return super.getWriter();
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        addServerTiming();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        addServerTiming();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        addServerTiming();
+        super.flushBuffer();
+    }
+}
@@ -2,24 +2,172 @@ package com.laioffer.jupiter.servlet;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.laioffer.jupiter.entity.Game;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.json.JsonCodec;
+import com.laioffer.jupiter.json.JsonPayload;
+import com.laioffer.jupiter.json.JsonPayloadCache;
+import com.laioffer.jupiter.metrics.RequestTiming;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 public class ServletUtil {
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    private static final JsonPayloadCache PAYLOAD_CACHE = JsonPayloadCache.getInstance();
 
-//    public static void writeItemMap(HttpServletResponse response, Map<String, List<Item>> itemMap) throws IOException {
-//        response.setContentType("application/json;charset=UTF-8");
-//        response.getWriter().print(new ObjectMapper().writeValueAsString(itemMap));
-//    }
+    // All the JSON is written by the shared readers/writers of JsonCodec instead of a new ObjectMapper per call.
+    // The JSON is generated straight into the response output stream (gzipped if the client accepts it),
+    // so we never hold the whole body as a String.
+    public static void writeItemMap(HttpServletRequest request, HttpServletResponse response,
+                                    Map<String, List<Item>> itemMap) throws IOException {
+        writeJson(request, response, itemMap, JsonCodec.itemMapWriter());
+    }
+
+    public static void writeGames(HttpServletRequest request, HttpServletResponse response,
+                                  List<Game> games) throws IOException {
+        writeJson(request, response, games, JsonCodec.gameListWriter());
+    }
 
     public static <T> void writeItem(HttpServletResponse response, T item) throws IOException {
         response.setContentType("application/json;charset=UTF-8");
-        response.getWriter().print(new ObjectMapper().writeValueAsString(item));
+        RequestTiming.Span span = RequestTiming.startSpan("serialize");
+        try {
+            writerOf(item).writeValue(response.getOutputStream(), item);
+        } finally {
+            span.close();
+        }
+    }
+
+    // The cached versions are for read-only values shared by many requests, e.g. the background snapshots
+    // and the Twitch cache entries. Their body is serialized once, and a client that already has it
+    // (If-None-Match with the same ETag) gets 304 Not Modified without a body.
+    public static void writeCachedItemMap(HttpServletRequest request, HttpServletResponse response,
+                                          Map<String, List<Item>> itemMap) throws IOException {
+        writeCachedJson(request, response, itemMap, JsonCodec.itemMapWriter());
+    }
+
+    public static void writeCachedGames(HttpServletRequest request, HttpServletResponse response,
+                                        List<Game> games) throws IOException {
+        writeCachedJson(request, response, games, JsonCodec.gameListWriter());
+    }
+
+    public static <T> void writeCachedItem(HttpServletRequest request, HttpServletResponse response, T item)
+            throws IOException {
+        writeCachedJson(request, response, item, writerOf(item));
+    }
+
+    private static void writeJson(HttpServletRequest request, HttpServletResponse response,
+                                  Object value, ObjectWriter writer) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        response.addHeader("Vary", "Accept-Encoding");
+        // the body is streamed while it is serialized, so the span includes sending it
+        RequestTiming.Span span = RequestTiming.startSpan("serialize");
+        try {
+            if (!acceptsGzip(request)) {
+                writer.writeValue(response.getOutputStream(), value);
+                return;
+            }
+            response.setHeader("Content-Encoding", "gzip");
+            GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE);
+            writer.writeValue(gzip, value);
+            // write the gzip trailer, the container closes the response stream itself
+            gzip.finish();
+        } finally {
+            span.close();
+        }
+    }
+
+    private static void writeCachedJson(HttpServletRequest request, HttpServletResponse response,
+                                        Object value, ObjectWriter writer) throws IOException {
+        if (value == null) {
+            // null cannot be a cache key, and there is nothing worth caching anyway
+            writeJson(request, response, null, writer);
+            return;
+        }
+        JsonPayload payload;
+        // normally a cache hit, only the first request of a snapshot serializes it
+        RequestTiming.Span span = RequestTiming.startSpan("serialize");
+        try {
+            payload = PAYLOAD_CACHE.get(value, writer);
+        } finally {
+            span.close();
+        }
+        boolean gzip = acceptsGzip(request);
+        String etag = gzip ? payload.getGzipEtag() : payload.getEtag();
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.addHeader("Vary", "Accept-Encoding");
+        response.setHeader("ETag", etag);
+        // the client may keep the body, but has to check with us before using it again
+        response.setHeader("Cache-Control", "no-cache");
+        if (matchesETag(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            // commit the headers here: an async response is completed by AsyncRequests after this returns,
+            // and flushing is what lets MetricsFilter's ServerTimingResponse add its header to a response
+            // without a body
+            response.flushBuffer();
+            return;
+        }
+        byte[] body = gzip ? payload.getGzipBody() : payload.getBody();
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(body.length);
+        span = RequestTiming.startSpan("write");
+        try {
+            response.getOutputStream().write(body);
+        } finally {
+            span.close();
+        }
+    }
+
+    private static ObjectWriter writerOf(Object value) {
+        return JsonCodec.writerFor(value == null ? Object.class : value.getClass());
+    }
+
+    // true if the Accept-Encoding header lists gzip (or *) without q=0
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") && param.substring(2).matches("0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // If-None-Match is either * or a list of ETags, e.g. "abc", "def"
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     // Help encrypt the user password before save to the database
@@ -28,9 +176,8 @@ public class ServletUtil {
     }
 
     public static <T> T readRequestBody(Class<T> cl, HttpServletRequest request) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            return mapper.readValue(request.getReader(), cl);
+            return JsonCodec.readerFor(cl).readValue(request.getReader());
         } catch (JsonParseException | JsonMappingException e) {
             return null;
         }
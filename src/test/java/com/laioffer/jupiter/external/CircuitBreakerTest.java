@@ -0,0 +1,109 @@
+package com.laioffer.jupiter.external;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The breaker runs with the default settings: a window of 20 calls, opens after at least 10 calls with 50% of
+// failures, 3 probes in HALF_OPEN. Only the open duration is shortened.
+public class CircuitBreakerTest {
+    private static final long OPEN_DURATION_MS = 50;
+
+    @Test
+    public void opensWhenTheFailureRateIsReached() {
+        CircuitBreaker breaker = new CircuitBreaker("test", OPEN_DURATION_MS);
+        // 9 calls are not enough to decide, even if they all fail
+        for (int i = 0; i < 9; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(false, 10);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false, 10);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void staysClosedUnderTheFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker("test", OPEN_DURATION_MS);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(breaker.tryAcquire());
+            // 1 failure out of 3 calls
+            breaker.onResult(i % 3 != 0, 10);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensWhenTheCallsAreSlow() {
+        CircuitBreaker breaker = new CircuitBreaker("test", OPEN_DURATION_MS);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(true, 5000);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbes() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(OPEN_DURATION_MS * 2);
+
+        // the open duration is over, 3 probes go through, not more
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onResult(true, 10);
+        breaker.onResult(true, 10);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(true, 10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+
+        assertEquals(Long.valueOf(1), breaker.getTransitions().get("CLOSED->OPEN"));
+        assertEquals(Long.valueOf(1), breaker.getTransitions().get("OPEN->HALF_OPEN"));
+        assertEquals(Long.valueOf(1), breaker.getTransitions().get("HALF_OPEN->CLOSED"));
+    }
+
+    @Test
+    public void opensAgainWhenAProbeFails() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(OPEN_DURATION_MS * 2);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false, 10);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(Long.valueOf(1), breaker.getTransitions().get("HALF_OPEN->OPEN"));
+    }
+
+    @Test
+    public void cancelledProbeFreesItsSlot() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(OPEN_DURATION_MS * 2);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+        }
+        assertFalse(breaker.tryAcquire());
+        breaker.onCancel();
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private static CircuitBreaker open() {
+        CircuitBreaker breaker = new CircuitBreaker("test", OPEN_DURATION_MS);
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire();
+            breaker.onResult(false, 10);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,128 @@
+package com.laioffer.jupiter.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+    // 8 exact buckets, then 8 buckets for each power of two from 2^3 to 2^36
+    private static final int BUCKETS = 8 + 34 * 8;
+
+    @Test
+    public void smallValuesHaveOneBucketEach() {
+        for (int micros = 0; micros < 16; micros++) {
+            assertEquals(micros, LatencyHistogram.indexOf(micros));
+            assertEquals(micros, LatencyHistogram.upperBound(micros));
+        }
+    }
+
+    @Test
+    public void bucketsDoubleWithEveryPowerOfTwo() {
+        // [16, 17], [18, 19], ... [30, 31], then [32, 35], ...
+        assertEquals(16, LatencyHistogram.indexOf(16));
+        assertEquals(16, LatencyHistogram.indexOf(17));
+        assertEquals(17, LatencyHistogram.indexOf(18));
+        assertEquals(17, LatencyHistogram.upperBound(16));
+        assertEquals(31, LatencyHistogram.upperBound(23));
+        assertEquals(24, LatencyHistogram.indexOf(32));
+        assertEquals(24, LatencyHistogram.indexOf(35));
+        assertEquals(35, LatencyHistogram.upperBound(24));
+        // 1 second is in [983040, 1048575]
+        assertEquals(983040 + 65535, LatencyHistogram.upperBound(LatencyHistogram.indexOf(1000000)));
+    }
+
+    @Test
+    public void everyUpperBoundIsTheLastValueOfItsBucket() {
+        for (int i = 0; i < BUCKETS; i++) {
+            long upper = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.indexOf(upper));
+            if (i < BUCKETS - 1) {
+                assertEquals(i + 1, LatencyHistogram.indexOf(upper + 1));
+            }
+        }
+        assertEquals((1L << 37) - 1, LatencyHistogram.upperBound(BUCKETS - 1));
+    }
+
+    @Test
+    public void largeValuesGoToTheLastBucket() {
+        assertEquals(BUCKETS - 1, LatencyHistogram.indexOf(1L << 37));
+        assertEquals(BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void countAtMostIsExactAtTheBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5, TimeUnit.MICROSECONDS);
+        histogram.record(16, TimeUnit.MICROSECONDS);
+        histogram.record(17, TimeUnit.MICROSECONDS);
+        histogram.record(32, TimeUnit.MICROSECONDS);
+        histogram.record(35, TimeUnit.MICROSECONDS);
+
+        assertEquals(0, histogram.countAtMost(4));
+        assertEquals(1, histogram.countAtMost(5));
+        assertEquals(1, histogram.countAtMost(15));
+        assertEquals(3, histogram.countAtMost(17));
+        assertEquals(3, histogram.countAtMost(31));
+        assertEquals(5, histogram.countAtMost(35));
+        assertEquals(5, histogram.countAtMost(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void countAtMostSpreadsTheValuesOfAPartialBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 4 values in [32, 35]
+        for (int i = 0; i < 4; i++) {
+            histogram.record(32, TimeUnit.MICROSECONDS);
+        }
+        assertEquals(1, histogram.countAtMost(32));
+        assertEquals(2, histogram.countAtMost(33));
+        assertEquals(3, histogram.countAtMost(34));
+        assertEquals(4, histogram.countAtMost(35));
+    }
+
+    @Test
+    public void recordsInMicroseconds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(2, TimeUnit.MILLISECONDS);
+        histogram.record(1500, TimeUnit.NANOSECONDS);
+        histogram.record(-1, TimeUnit.MILLISECONDS);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(2001, histogram.getSumMicros());
+        assertEquals(2, histogram.countAtMost(1));
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.indexOf(2000)), histogram.valueAtQuantile(1.0));
+        assertEquals(1, histogram.valueAtQuantile(0.5));
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5, TimeUnit.MILLISECONDS);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        histogram.record(1, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, snapshot.getCount());
+        assertEquals(0, snapshot.countAtMost(1000));
+        assertEquals(1, snapshot.countAtMost(Long.MAX_VALUE));
+        assertEquals(2, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void snapshotCountsAreCumulative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 0; micros < 100000; micros += 7) {
+            histogram.record(micros, TimeUnit.MICROSECONDS);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        long previous = 0;
+        for (long micros = 1; micros < 200000; micros = micros * 3 / 2 + 1) {
+            long count = snapshot.countAtMost(micros);
+            assertTrue(count >= previous);
+            assertTrue(count <= snapshot.getCount());
+            previous = count;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entity.FavoriteProfile;
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.entity.ItemType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DefaultItemScorerTest {
+    private static final long NOW = System.currentTimeMillis();
+    private static final long DAY_MS = 24 * 3600 * 1000L;
+
+    private final DefaultItemScorer scorer = new DefaultItemScorer();
+
+    // 10 recent favorites of "hot", 1 favorite of "old" added 200 days ago, so "old" has a very low affinity
+    private final RecommendationContext context = new RecommendationContext(profile(),
+            Collections.singletonMap("similar-video", 0.01), NOW);
+
+    @Test
+    public void favoriteGameWithLowAffinityOutranksOtherGames() {
+        assertTrue(context.gameAffinity(ItemType.VIDEO, "old") < 0.01);
+        double favorite = score("video-1", "old", 5);
+        // the first of the searched games, e.g. the #1 top game
+        assertTrue(favorite > score("video-2", "top", 0));
+        assertTrue(favorite > score("video-3", "other", 1));
+        assertTrue(score("video-4", "hot", 0) > favorite);
+    }
+
+    @Test
+    public void similarItemOutranksOtherGames() {
+        assertTrue(score("similar-video", "other", 5) > score("video-2", "top", 0));
+    }
+
+    @Test
+    public void otherGamesFollowTheSearchOrder() {
+        assertTrue(score("video-2", "top", 0) > score("video-3", "other", 1));
+    }
+
+    private double score(String itemId, String gameId, int gameRank) {
+        Item item = new Item.Builder().id(itemId).gameId(gameId).type(ItemType.VIDEO).build();
+        return scorer.score(new Candidate(item, gameRank, 0), context);
+    }
+
+    private static FavoriteProfile profile() {
+        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        Map<String, Map<String, Long>> times = new HashMap<>();
+        Map<String, Integer> videoCounts = new HashMap<>();
+        videoCounts.put("hot", 10);
+        videoCounts.put("old", 1);
+        counts.put(ItemType.VIDEO.toString(), videoCounts);
+        Map<String, Long> videoTimes = new HashMap<>();
+        videoTimes.put("hot", NOW);
+        videoTimes.put("old", NOW - 200 * DAY_MS);
+        times.put(ItemType.VIDEO.toString(), videoTimes);
+        return new FavoriteProfile(new HashSet<>(), counts, times);
+    }
+}
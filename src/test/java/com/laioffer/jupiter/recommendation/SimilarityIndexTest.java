@@ -0,0 +1,110 @@
+package com.laioffer.jupiter.recommendation;
+
+import com.laioffer.jupiter.entity.Item;
+import com.laioffer.jupiter.entity.ItemType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Build an index from a few users, write it with SimilarityIndexBuilder and read it back.
+public class SimilarityIndexTest {
+    @TempDir
+    Path directory;
+
+    private SimilarityIndex index;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        SimilarityIndexBuilder.CoOccurrence items = new SimilarityIndexBuilder.CoOccurrence();
+        SimilarityIndexBuilder.CoOccurrence games = new SimilarityIndexBuilder.CoOccurrence();
+        // v1 and v2 are favorited together twice, v1 and c1 once, "é1" has a non-ASCII id
+        items.addUser(new LinkedHashSet<>(Arrays.asList("v1", "v2", "c1")));
+        items.addUser(new LinkedHashSet<>(Arrays.asList("v1", "v2")));
+        items.addUser(new LinkedHashSet<>(Arrays.asList("c1", "é1")));
+        games.addUser(new LinkedHashSet<>(Arrays.asList("g1", "g2")));
+        games.addUser(new LinkedHashSet<>(Collections.singletonList("g3")));
+
+        Map<String, Item> savedItems = new HashMap<>();
+        savedItems.put("v1", new Item.Builder().id("v1").type(ItemType.VIDEO).title("Video 1").url("https://v1")
+                .broadcasterName("caster").gameId("g1").build());
+        savedItems.put("é1", new Item.Builder().id("é1").type(ItemType.CLIP).title("Clip é").build());
+
+        Path path = directory.resolve("similarity.idx");
+        SimilarityIndexBuilder.write(path, items, games, savedItems);
+        index = SimilarityIndex.open(path);
+    }
+
+    @Test
+    public void similarItemsAreOrderedByScore() {
+        assertEquals(4, index.getItemCount());
+        assertEquals(3, index.getGameCount());
+        assertTrue(index.getBuiltAt() > 0);
+
+        Map<String, Double> similar = index.similarItems(Collections.singletonList("v1"), 10);
+        assertEquals(Arrays.asList("v2", "c1"), new ArrayList<>(similar.keySet()));
+        // v1, v2: 2 / sqrt(2 * 2), v1, c1: 1 / sqrt(2 * 2), divided by the best score
+        assertEquals(1.0, similar.get("v2"), 1e-6);
+        assertEquals(0.5, similar.get("c1"), 1e-6);
+    }
+
+    @Test
+    public void givenItemsAreExcluded() {
+        Map<String, Double> similar = index.similarItems(Arrays.asList("v1", "c1"), 10);
+        assertEquals(new LinkedHashSet<>(Arrays.asList("v2", "é1")), similar.keySet());
+        assertEquals(1, index.similarItems(Collections.singletonList("v1"), 1).size());
+    }
+
+    @Test
+    public void missingKeysAreIgnored() {
+        assertTrue(index.similarItems(Collections.singletonList("unknown"), 10).isEmpty());
+        assertEquals(Collections.singleton("c1"), index.similarItems(Arrays.asList("unknown", "é1"), 10).keySet());
+        // before the first key, after the last one, and a prefix of an existing key
+        assertTrue(index.similarItems(Arrays.asList("", "zzz", "v"), 10).isEmpty());
+        assertTrue(index.similarGames(Collections.singletonList("g4"), 10).isEmpty());
+        // g3 is in the index but has no neighbor
+        assertTrue(index.similarGames(Collections.singletonList("g3"), 10).isEmpty());
+        assertEquals(Collections.singleton("g2"), index.similarGames(Collections.singletonList("g1"), 10).keySet());
+    }
+
+    @Test
+    public void savedItemsAreReadBack() {
+        Item video = index.getItem("v1");
+        assertEquals("v1", video.getId());
+        assertEquals(ItemType.VIDEO, video.getType());
+        assertEquals("Video 1", video.getTitle());
+        assertEquals("https://v1", video.getUrl());
+        assertNull(video.getThumbnailUrl());
+        assertEquals("caster", video.getBroadcasterName());
+        assertEquals("g1", video.getGameId());
+
+        Item clip = index.getItem("é1");
+        assertEquals(ItemType.CLIP, clip.getType());
+        assertEquals("Clip é", clip.getTitle());
+
+        // in the index but not in the items table, and not in the index at all
+        assertNull(index.getItem("v2"));
+        assertNull(index.getItem("unknown"));
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path path = directory.resolve("other.idx");
+        Files.write(path, new byte[64]);
+        assertThrows(IOException.class, () -> SimilarityIndex.open(path));
+    }
+}